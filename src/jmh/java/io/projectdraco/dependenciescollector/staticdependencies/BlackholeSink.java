@@ -0,0 +1,25 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import org.openjdk.jmh.infra.*;
+
+// consumes printed edges without writing them anywhere
+class BlackholeSink implements DependencySink {
+
+    private final Blackhole blackhole;
+
+    BlackholeSink(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    public void edge(CharSequence source, char separator, CharSequence target) {
+        blackhole.consume(source);
+        blackhole.consume(target.length());
+    }
+
+    public void lines(CharSequence lines) {
+        blackhole.consume(lines);
+    }
+
+    public void close() {
+    }
+}
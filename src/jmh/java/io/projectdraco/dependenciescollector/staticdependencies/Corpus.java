@@ -0,0 +1,106 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+// Source files the benchmarks run against: either the examples/ directory or a generated corpus
+// of classes that call, construct and read fields of each other and extend external types.
+@State(Scope.Benchmark)
+public class Corpus {
+
+    @Param({"synthetic", "examples"})
+    public String corpus;
+
+    // number of generated classes, ignored for examples
+    @Param({"200"})
+    public int classes;
+
+    public String[] roots;
+    public List<String> paths;
+    private Path generated;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path root;
+        if (corpus.equals("examples")) {
+            root = Paths.get(System.getProperty("sdc.examples", "examples"));
+        } else {
+            generated = Files.createTempDirectory("sdc-corpus");
+            root = generated.resolve("src");
+            generate(root, classes);
+        }
+        roots = new String[] { root.toAbsolutePath().toString() };
+        try (Stream<Path> s = Files.walk(root)) {
+            paths = s.map(p -> p.toAbsolutePath().toString()).filter(p -> p.endsWith(".java"))
+                .sorted().collect(Collectors.toList());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (generated != null) {
+            try (Stream<Path> s = Files.walk(generated)) {
+                for (Path p : s.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    // a unit store holding every unit of the corpus
+    public ParsedUnitStore parsed() {
+        ParsedUnitStore units = new ParsedUnitStore(ParsedUnitStore.UNBOUNDED);
+        for (String root : roots) {
+            units.units(root).forEach(cu -> {});
+        }
+        return units;
+    }
+
+    static void generate(Path root, int classes) throws IOException {
+        for (int i = 0; i < classes; i++) {
+            int next = (i * 7 + 1) % classes;
+            int item = (i * 13 + 5) % classes;
+            Path dir = root.resolve("p" + (i % 10));
+            Files.createDirectories(dir);
+            String source =
+                "package p" + (i % 10) + ";\n" +
+                "\n" +
+                "import java.util.*;\n" +
+                "import ext.Base" + (i % 5) + ";\n" +
+                "import p" + (next % 10) + ".C" + next + ";\n" +
+                "import p" + (item % 10) + ".C" + item + ";\n" +
+                "\n" +
+                "public class C" + i + " extends Base" + (i % 5) + "<String> implements Comparable<C" + i + "> {\n" +
+                "\n" +
+                "    private C" + next + " next = new C" + next + "();\n" +
+                "    private List<C" + item + "> items = new ArrayList<>();\n" +
+                "    int value;\n" +
+                "\n" +
+                "    public C" + i + "() {\n" +
+                "    }\n" +
+                "\n" +
+                "    public int m(int x, String s) {\n" +
+                "        int total = next.m(x + value, s) + next.value + helper(s);\n" +
+                "        for (C" + item + " c : items) {\n" +
+                "            total += c.helper(s.trim()) + c.value;\n" +
+                "        }\n" +
+                "        return total + inherited(s);\n" +
+                "    }\n" +
+                "\n" +
+                "    int helper(String s) {\n" +
+                "        return s.length();\n" +
+                "    }\n" +
+                "\n" +
+                "    public int compareTo(C" + i + " o) {\n" +
+                "        return value - o.value;\n" +
+                "    }\n" +
+                "}\n";
+            Files.write(dir.resolve("C" + i + ".java"), source.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+// type solver setup and ExternalDeclarationVisitor over the whole corpus, parsing excluded
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class DiscoveryBenchmark {
+
+    private ParsedUnitStore units;
+
+    @Setup(Level.Trial)
+    public void setUp(Corpus corpus) {
+        units = corpus.parsed();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearFacades() {
+        JavaParserFacade.clearInstances();
+    }
+
+    @Benchmark
+    public Object discover(Corpus corpus) throws Exception {
+        return Main.discover(corpus.roots, units, null, null, null, null);
+    }
+}
@@ -0,0 +1,57 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.body.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// the string building behind every printed node
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class NamingBenchmark {
+
+    private final List<MethodDeclaration> methods = new ArrayList<>();
+    private final List<ConstructorDeclaration> constructors = new ArrayList<>();
+    private Main.Analysis analysis;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp(Corpus corpus) throws Exception {
+        ParsedUnitStore units = corpus.parsed();
+        // the roots compilation unit paths are relative to
+        analysis = Main.discover(corpus.roots, units, null, null, null, null).analysis;
+        for (String path : corpus.paths) {
+            CompilationUnit cu = units.get(path);
+            if (cu != null) {
+                methods.addAll(cu.findAll(MethodDeclaration.class));
+                constructors.addAll(cu.findAll(ConstructorDeclaration.class));
+            }
+        }
+    }
+
+    @Benchmark
+    public String describeMethodParameters() {
+        return Main.describeParameters(methods.get(cursor++ % methods.size()));
+    }
+
+    @Benchmark
+    public String describeConstructorParameters() {
+        // examples/ declares no constructors
+        if (constructors.isEmpty()) {
+            return null;
+        }
+        return Main.describeParameters(constructors.get(cursor++ % constructors.size()));
+    }
+
+    @Benchmark
+    public String compilationUnitPath(Corpus corpus) {
+        return analysis.unitPath(corpus.paths.get(cursor++ % corpus.paths.size()));
+    }
+}
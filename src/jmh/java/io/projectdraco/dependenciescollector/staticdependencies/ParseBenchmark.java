@@ -0,0 +1,22 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+// files parsed per second, cycling through the corpus
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    private int cursor;
+
+    @Benchmark
+    public Object parse(Corpus corpus) {
+        return Main.parse(corpus.paths.get(cursor++ % corpus.paths.size()), null);
+    }
+}
@@ -0,0 +1,58 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.visitor.*;
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+import java.util.concurrent.*;
+import java.util.function.*;
+
+// one unit visited by a printer, cycling through the corpus. Every iteration resolves against
+// fresh type solvers, so its first pass over the corpus starts with empty resolution caches.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PrinterBenchmark {
+
+    @Param({"static", "inheritance", "field-types", "combined"})
+    public String printer;
+
+    private String[] roots;
+    private ParsedUnitStore units;
+    private Main.TypeSolvers typeSolvers;
+    private Function<DependencySink, VoidVisitor<JavaParserFacade>> visitors;
+    private JavaParserFacade facade;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp(Corpus corpus) throws Exception {
+        roots = corpus.roots;
+        units = corpus.parsed();
+        typeSolvers = Main.discover(corpus.roots, units, null, null, null, null);
+        visitors = Main.printer(printer.equals("inheritance"), printer.equals("field-types"), printer.equals("combined"));
+    }
+
+    @Setup(Level.Iteration)
+    public void freshTypeSolvers() {
+        JavaParserFacade.clearInstances();
+        facade = JavaParserFacade.get(typeSolvers.copy().typeSolver);
+    }
+
+    @Benchmark
+    public void print(Corpus corpus, Blackhole blackhole) {
+        CompilationUnit cu = units.get(corpus.paths.get(cursor++ % corpus.paths.size()));
+        if (cu != null) {
+            DependencySink sink = new BlackholeSink(blackhole);
+            if (printer.equals("combined")) {
+                sink = new CombinedSink(sink, sink, sink);
+            }
+            Main.print(cu, visitors.apply(sink), facade);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+// Keeps every distinct edge once, with the number of times it was printed, and gives them sorted to
+// another sink when closed. Edges are either the printed member ones, optionally followed by the
+// source lines they were printed from, or rolled up to weighted dependencies between the classes or
+// packages of their ends. Lines are "source<separator>target<TAB>count[<TAB>line,line...]".
+class AggregatingSink implements DependencySink {
+
+    enum Level { MEMBER, CLASS, PACKAGE }
+
+    private static final String UNIT_MARKER = "/[CN]/";
+    private static final String PACKAGE_MARKER = "/[PK]/";
+
+    private final DependencySink out;
+    private final Level level;
+    private final boolean withLines;
+    // index of the file name in a unit path, -1 if not known
+    private final ToIntFunction<String> fileStarts;
+    // ends of the edges kept, interned whatever table they were printed with
+    private final Symbols symbols = new Symbols();
+    // index of each (source << 32 | target) pair of symbols
+    private final LongIntMap indexes = new LongIntMap();
+    private long[] pairs = new long[1024];
+    private int[] counts = new int[1024];
+    private int[][] lines;
+    private int[] lineCounts;
+    // class or package symbol of each symbol rolled up so far
+    private final IntIntMap rolledUp = new IntIntMap();
+    private char separator = ' ';
+
+    public AggregatingSink(DependencySink out, Level level, boolean withLines, ToIntFunction<String> fileStarts) {
+        if (withLines && level != Level.MEMBER) {
+            throw new IllegalArgumentException("Only member edges keep their source lines");
+        }
+        this.out = out;
+        this.level = level;
+        this.withLines = withLines;
+        this.fileStarts = fileStarts;
+        if (withLines) {
+            lines = new int[1024][];
+            lineCounts = new int[1024];
+        }
+    }
+
+    public void edge(CharSequence source, char separator, CharSequence target) {
+        add(symbols.id(source), separator, symbols.id(target), -1);
+    }
+
+    public void edge(Symbols symbols, int source, char separator, int target) {
+        edge(symbols, source, separator, target, -1);
+    }
+
+    public void edge(Symbols symbols, int source, char separator, int target, int line) {
+        add(this.symbols.id(symbols.text(source)), separator, this.symbols.id(symbols.text(target)), line);
+    }
+
+    private synchronized void add(int source, char separator, int target, int line) {
+        this.separator = separator;
+        if (level != Level.MEMBER) {
+            source = rollUp(source);
+            target = rollUp(target);
+        }
+        long pair = (long) source << 32 | target;
+        int i = indexes.get(pair, -1);
+        if (i < 0) {
+            i = indexes.size();
+            indexes.put(pair, i);
+            if (i == pairs.length) {
+                pairs = Arrays.copyOf(pairs, i * 2);
+                counts = Arrays.copyOf(counts, i * 2);
+                if (withLines) {
+                    lines = Arrays.copyOf(lines, i * 2);
+                    lineCounts = Arrays.copyOf(lineCounts, i * 2);
+                }
+            }
+            pairs[i] = pair;
+        }
+        counts[i]++;
+        if (withLines && line >= 0) {
+            addLine(i, line);
+        }
+    }
+
+    // every "source<separator>target" line, such as the ones kept for a unit by a previous run
+    public synchronized void lines(CharSequence text) {
+        for (String line : text.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                int split = EdgeListWriter.split(line);
+                add(symbols.id(line.substring(0, split)), line.charAt(split), symbols.id(line.substring(split + 1)), -1);
+            }
+        }
+    }
+
+    private void addLine(int i, int line) {
+        int[] l = lines[i];
+        if (l == null) {
+            l = lines[i] = new int[2];
+        } else if (lineCounts[i] == l.length) {
+            l = lines[i] = Arrays.copyOf(l, l.length * 2);
+        }
+        l[lineCounts[i]++] = line;
+    }
+
+    private int rollUp(int symbol) {
+        int rolled = rolledUp.get(symbol, -1);
+        if (rolled < 0) {
+            rolled = symbols.id(rollUp(symbols.text(symbol), level, fileStarts));
+            rolledUp.put(symbol, rolled);
+        }
+        return rolled;
+    }
+
+    // "path_to_File.java/[CN]/Type" of members, the type named after the file of units,
+    // "path_to/[PK]/" of anything within a unit
+    static String rollUp(String node, Level level, ToIntFunction<String> fileStarts) {
+        int marker = node.indexOf(UNIT_MARKER);
+        if (marker < 0 || level == Level.MEMBER) {
+            return node;
+        }
+        // file names may have '_' of their own, as may directories, so the last one is only a guess
+        int file = fileStarts.applyAsInt(node.substring(0, marker + UNIT_MARKER.length()));
+        if (file < 0) {
+            file = node.lastIndexOf('_', marker) + 1;
+        }
+        if (level == Level.CLASS) {
+            int start = marker + UNIT_MARKER.length();
+            int end = node.indexOf("/[", start);
+            if (end >= 0) {
+                return node.substring(0, end);
+            }
+            if (start < node.length()) {
+                return node;
+            }
+            // units are printed as their path with '/' replaced, the file name being the last part
+            String name = node.substring(file, marker);
+            return node + (name.endsWith(".java") ? name.substring(0, name.length() - 5) : name);
+        }
+        return (file == 0 ? "" : node.substring(0, file - 1)) + PACKAGE_MARKER;
+    }
+
+    public synchronized void close() throws IOException {
+        String[] sorted = new String[indexes.size()];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sorted.length; i++) {
+            sb.setLength(0);
+            sb.append(symbols.text((int) (pairs[i] >>> 32))).append(separator)
+                .append(symbols.text((int) pairs[i])).append('\t').append(counts[i]);
+            if (withLines && lines[i] != null) {
+                int[] l = Arrays.copyOf(lines[i], lineCounts[i]);
+                Arrays.sort(l);
+                for (int j = 0; j < l.length; j++) {
+                    if (j == 0 || l[j] != l[j - 1]) {
+                        sb.append(j == 0 ? '\t' : ',').append(l[j]);
+                    }
+                }
+            }
+            sorted[i] = sb.append('\n').toString();
+        }
+        Arrays.sort(sorted);
+        for (String line : sorted) {
+            out.lines(line);
+        }
+        out.close();
+    }
+}
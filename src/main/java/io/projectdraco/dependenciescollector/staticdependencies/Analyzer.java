@@ -0,0 +1,132 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.visitor.*;
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+// Library entry point: the dependencies of a set of source roots as a stream of edges.
+// Types are discovered when edges() is called, units are analysed only as the stream is consumed,
+// so consumers that stop early never analyse the rest. Each analyzer has state of its own, so
+// several may be used at once. Streams are sequential, and the streams of one analyzer must not
+// be consumed concurrently.
+public class Analyzer {
+
+    public enum Mode {
+        STATIC, INHERITANCE, FIELD_TYPES
+    }
+
+    private final String[] roots;
+    private Mode mode = Mode.STATIC;
+    private String classpath;
+    private String classpathCache = ClasspathTypeSolver.DEFAULT_CACHE;
+    private String typeIndex;
+    private int unitCache = ParsedUnitStore.UNBOUNDED;
+    private ParsedUnitStore units;
+    private Main.TypeSolvers typeSolvers;
+
+    public Analyzer(String... roots) {
+        this.roots = roots.clone();
+    }
+
+    public Analyzer mode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public Analyzer classpath(String classpath) {
+        this.classpath = classpath;
+        return this;
+    }
+
+    public Analyzer classpathCache(String dir) {
+        this.classpathCache = dir;
+        return this;
+    }
+
+    public Analyzer typeIndex(String file) {
+        this.typeIndex = file;
+        return this;
+    }
+
+    public Analyzer unitCache(int maxResident) {
+        this.unitCache = maxResident;
+        return this;
+    }
+
+    public Stream<DependencyEdge> edges() {
+        if (typeSolvers == null) {
+            try {
+                units = new ParsedUnitStore(unitCache);
+                ClasspathTypeSolver.Index classpathIndex =
+                    classpath == null ? null : new ClasspathTypeSolver.Index(classpath, classpathCache);
+                typeSolvers = Main.discover(roots, units, classpathIndex, typeIndex, null, null);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        Iterator<String> paths = Arrays.stream(roots).flatMap(r -> units.paths(r).stream()).iterator();
+        JavaParserFacade facade = JavaParserFacade.get(typeSolvers.typeSolver);
+        Function<DependencySink, VoidVisitor<JavaParserFacade>> printer =
+            Main.printer(mode == Mode.INHERITANCE, mode == Mode.FIELD_TYPES);
+        EdgeQueue pending = new EdgeQueue();
+        Spliterator<DependencyEdge> edges = new Spliterators.AbstractSpliterator<DependencyEdge>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            public boolean tryAdvance(Consumer<? super DependencyEdge> action) {
+                while (pending.edges.isEmpty() && paths.hasNext()) {
+                    pending.file = paths.next();
+                    CompilationUnit cu = units.get(pending.file);
+                    if (cu != null) {
+                        Main.print(cu, printer.apply(pending), facade);
+                    }
+                }
+                DependencyEdge edge = pending.edges.poll();
+                if (edge == null) {
+                    return false;
+                }
+                action.accept(edge);
+                return true;
+            }
+        };
+        return StreamSupport.stream(edges, false);
+    }
+
+    private class EdgeQueue implements DependencySink {
+        final Deque<DependencyEdge> edges = new ArrayDeque<>();
+        String file;
+
+        public void edge(CharSequence source, char separator, CharSequence target) {
+            String t = target.toString();
+            edges.add(new DependencyEdge(source.toString(), t, kind(t), file));
+        }
+
+        private DependencyEdge.Kind kind(String target) {
+            if (mode == Mode.INHERITANCE) {
+                return DependencyEdge.Kind.INHERITANCE;
+            } else if (mode == Mode.FIELD_TYPES) {
+                return DependencyEdge.Kind.FIELD_TYPE;
+            } else if (target.contains("/[CS]/")) {
+                return DependencyEdge.Kind.CONSTRUCTOR;
+            } else if (target.contains("/[FE]/")) {
+                return DependencyEdge.Kind.FIELD;
+            }
+            return DependencyEdge.Kind.METHOD;
+        }
+
+        // edges printed as text, one "source<separator>target" per line
+        public void lines(CharSequence text) {
+            for (String line : text.toString().split("\n")) {
+                if (!line.isEmpty()) {
+                    int split = EdgeListWriter.split(line);
+                    edge(line.substring(0, split), line.charAt(split), line.substring(split + 1));
+                }
+            }
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.resolution.declarations.*;
+import com.github.javaparser.symbolsolver.javassistmodel.*;
+import com.github.javaparser.symbolsolver.model.resolution.*;
+
+import javassist.*;
+import javassist.bytecode.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.stream.*;
+
+// Resolves types from JARs and class directories by reading their class files with javassist,
+// without loading them. Each type solver world gets its own instance over a shared Index.
+class ClasspathTypeSolver implements TypeSolver {
+
+    static final String DEFAULT_CACHE =
+        Paths.get(System.getProperty("user.home"), ".cache", "static-dependencies-collector").toString();
+
+    private final Index index;
+    private final ClassPool classPool = new ClassPool(false);
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> found = new HashMap<>();
+    private TypeSolver parent;
+
+    public ClasspathTypeSolver(Index index) {
+        this.index = index;
+        try {
+            for (String element : index.elements) {
+                classPool.appendClassPath(element);
+            }
+        } catch (NotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        classPool.appendSystemPath();
+    }
+
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+    }
+
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        SymbolReference<ResolvedReferenceTypeDeclaration> result = found.get(name);
+        if (result != null) {
+            return result;
+        }
+        String binaryName = index.binaryNames.get(name);
+        result = SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+        if (binaryName != null) {
+            try {
+                result = SymbolReference.solved(JavassistFactory.toTypeDeclaration(classPool.get(binaryName), getRoot()));
+            } catch (NotFoundException e) {
+                System.err.println("Cannot read class " + binaryName + " " + e.getMessage());
+            }
+        }
+        found.put(name, result);
+        return result;
+    }
+
+    // Class names of the classpath elements. Listings of names are cached by content hash, so
+    // unchanged JARs are never opened again to list them, even by later runs; the classes a run
+    // resolves are still read from the elements themselves.
+    static class Index {
+        private final List<String> elements = new ArrayList<>();
+        private final Map<String, String> binaryNames = new HashMap<>();
+
+        public Index(String classpath, String cacheDir) throws IOException {
+            Path cache = Paths.get(cacheDir);
+            Files.createDirectories(cache);
+            Path stampsFile = cache.resolve("stamps");
+            Map<String, String> stamps = new HashMap<>();
+            if (Files.exists(stampsFile)) {
+                for (String line : Files.readAllLines(stampsFile, StandardCharsets.UTF_8)) {
+                    String[] cols = line.split("\t");
+                    if (cols.length != 2) {
+                        // such as a line cut short, its element is hashed again
+                        continue;
+                    }
+                    stamps.put(cols[0], cols[1]);
+                }
+            }
+            boolean stampsChanged = false;
+            for (String element : classpath.split(File.pathSeparator)) {
+                if (element.isEmpty()) {
+                    continue;
+                }
+                File f = new File(element).getAbsoluteFile();
+                if (!f.exists()) {
+                    System.err.println("Ignoring missing classpath element " + element);
+                    continue;
+                }
+                elements.add(f.getPath());
+                String stamp = f.getPath() + "|" + f.length() + "|" + f.lastModified();
+                String hash = stamps.get(stamp);
+                if (hash == null) {
+                    hash = f.isDirectory() ? directoryHash(f.toPath()) : IncrementalStore.hash(Files.readAllBytes(f.toPath()));
+                    stamps.put(stamp, hash);
+                    stampsChanged = true;
+                }
+                Path listing = cache.resolve(hash + ".names");
+                if (!Files.exists(listing)) {
+                    writeListing(f, listing);
+                }
+                for (String binaryName : Files.readAllLines(listing, StandardCharsets.UTF_8)) {
+                    binaryNames.putIfAbsent(binaryName.replace('$', '.'), binaryName);
+                }
+            }
+            if (stampsChanged) {
+                List<String> lines = stamps.entrySet().stream()
+                    .map(e -> e.getKey() + "\t" + e.getValue()).sorted().collect(Collectors.toList());
+                write(stampsFile, lines);
+            }
+        }
+
+        public boolean contains(String name) {
+            return binaryNames.containsKey(name);
+        }
+
+        private static String directoryHash(Path dir) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path p : paths.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList())) {
+                    sb.append(dir.relativize(p)).append('\t').append(Files.size(p)).append('\t')
+                        .append(Files.getLastModifiedTime(p).toMillis()).append('\n');
+                }
+            }
+            return IncrementalStore.hash(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        // the binary name of each class, read from the class file headers
+        private static void writeListing(File element, Path listing) throws IOException {
+            List<String> lines = new ArrayList<>();
+            if (element.isDirectory()) {
+                try (Stream<Path> paths = Files.walk(element.toPath())) {
+                    for (Path p : paths.filter(p -> p.toString().endsWith(".class")).collect(Collectors.toList())) {
+                        try (InputStream is = new BufferedInputStream(Files.newInputStream(p))) {
+                            addClass(is, lines);
+                        }
+                    }
+                }
+            } else {
+                try (JarFile jar = new JarFile(element)) {
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        JarEntry entry = entries.nextElement();
+                        if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                            continue;
+                        }
+                        try (InputStream is = new BufferedInputStream(jar.getInputStream(entry))) {
+                            addClass(is, lines);
+                        }
+                    }
+                }
+            }
+            write(listing, lines);
+        }
+
+        // replaces the file at once, runs sharing the cache read either the old lines or the new ones
+        private static void write(Path file, List<String> lines) throws IOException {
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, lines, StandardCharsets.UTF_8);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private static void addClass(InputStream is, List<String> lines) throws IOException {
+            ClassFile cf = new ClassFile(new DataInputStream(is));
+            if (cf.getName().endsWith("module-info") || cf.getName().endsWith("package-info")) {
+                return;
+            }
+            lines.add(cf.getName());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+
+// Separate sinks for the static, inheritance and field type edges printed in a single pass.
+// Edges given to the combined sink itself are static ones.
+class CombinedSink implements DependencySink {
+
+    final DependencySink statics;
+    final DependencySink inheritance;
+    final DependencySink fieldTypes;
+
+    public CombinedSink(DependencySink statics, DependencySink inheritance, DependencySink fieldTypes) {
+        this.statics = statics;
+        this.inheritance = inheritance;
+        this.fieldTypes = fieldTypes;
+    }
+
+    // collects the lines of a single unit
+    public static CombinedSink buffers() {
+        return new CombinedSink(new Buffer(), new Buffer(), new Buffer());
+    }
+
+    // copies what a combined sink of buffers collected
+    public void copyTo(CombinedSink out) {
+        ((Buffer) statics).copyTo(out.statics);
+        ((Buffer) inheritance).copyTo(out.inheritance);
+        ((Buffer) fieldTypes).copyTo(out.fieldTypes);
+    }
+
+    public void edge(CharSequence source, char separator, CharSequence target) {
+        statics.edge(source, separator, target);
+    }
+
+    public void edge(Symbols symbols, int source, char separator, int target) {
+        statics.edge(symbols, source, separator, target);
+    }
+
+    public void edge(Symbols symbols, int source, char separator, int target, int line) {
+        statics.edge(symbols, source, separator, target, line);
+    }
+
+    public void lines(CharSequence lines) {
+        statics.lines(lines);
+    }
+
+    public void close() throws IOException {
+        statics.close();
+        inheritance.close();
+        fieldTypes.close();
+    }
+}
@@ -0,0 +1,221 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.visitor.*;
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+// Keeps type solvers, parsed units and results warm between requests, served one at a time on a
+// loopback socket. Requests are lines of whitespace separated words:
+//
+//   DEPS <file>             edges printed from the file, analysed once and kept until something changes
+//   ANALYZE <file>...       forgets the files, then analyses them again and answers their edges
+//   INVALIDATE <file>...    forgets the files, they are read again by the next request
+//   STATUS                  counts of units, results and requests
+//   SHUTDOWN                stops the daemon
+//
+// Every answer ends with a line "OK <edges>" or "ERROR <message>". Changes are found before every
+// DEPS and ANALYZE by the size and modification time of the units and directories under the roots.
+// Any change forgets all results, since they depend on the declarations of other units, and
+// rebuilds the type solvers on the next request; only the ASTs of changed units are parsed again.
+class Daemon {
+
+    private final String[] roots;
+    private final ParsedUnitStore units;
+    private final ClasspathTypeSolver.Index classpath;
+    private final String typeIndex;
+    private final Function<DependencySink, VoidVisitor<JavaParserFacade>> printer;
+    private final Watchdog watchdog;
+    private Main.TypeSolvers typeSolvers;
+    private final Map<String, String> results = new HashMap<>();
+    // units under the roots by normalized path, null until walked again after a change
+    private Map<String, String> unitPaths;
+    // size and modification time of every unit and directory under the roots, taken when the type
+    // solvers were built, null until they are built again
+    private Map<String, String> stamps;
+    private int requests;
+
+    public Daemon(String[] roots, ParsedUnitStore units, ClasspathTypeSolver.Index classpath, String typeIndex,
+            Function<DependencySink, VoidVisitor<JavaParserFacade>> printer, Watchdog watchdog,
+            Main.TypeSolvers typeSolvers) {
+        this.roots = roots;
+        this.units = units;
+        this.classpath = classpath;
+        this.typeIndex = typeIndex;
+        this.printer = printer;
+        this.watchdog = watchdog;
+        this.typeSolvers = typeSolvers;
+        stamps = stamps();
+    }
+
+    // 0 picks a free port, printed on standard error
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort());
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    if (!serve(socket)) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Connection failed: " + e);
+                }
+            }
+        }
+    }
+
+    // answers requests until the client closes the connection, false on SHUTDOWN
+    private boolean serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty()) {
+                continue;
+            }
+            requests++;
+            String command = words[0].toUpperCase();
+            List<String> files = new ArrayList<>();
+            for (int i = 1; i < words.length; i++) {
+                String file = Paths.get(words[i]).toAbsolutePath().normalize().toString();
+                files.add(unitPaths().getOrDefault(file, file));
+            }
+            try {
+                if (command.equals("SHUTDOWN")) {
+                    out.write("OK 0\n");
+                    out.flush();
+                    return false;
+                } else if (command.equals("STATUS")) {
+                    out.write(String.format("units %d, results %d, requests %d\n", unitPaths().size(), results.size(), requests));
+                    out.write("OK 0\n");
+                } else if (command.equals("INVALIDATE")) {
+                    files.forEach(this::invalidate);
+                    out.write("OK 0\n");
+                } else if (command.equals("ANALYZE") || command.equals("DEPS")) {
+                    if (files.isEmpty() || command.equals("DEPS") && files.size() > 1) {
+                        throw new IllegalArgumentException("Expected " + (command.equals("DEPS") ? "a file" : "files"));
+                    }
+                    refresh();
+                    if (command.equals("ANALYZE")) {
+                        files.forEach(this::invalidate);
+                    }
+                    int edges = 0;
+                    for (String file : files) {
+                        String lines = result(file);
+                        out.write(lines);
+                        for (int i = 0; i < lines.length(); i++) {
+                            edges += lines.charAt(i) == '\n' ? 1 : 0;
+                        }
+                    }
+                    out.write("OK " + edges + "\n");
+                } else {
+                    throw new IllegalArgumentException("Unknown request " + words[0]);
+                }
+            } catch (Exception e) {
+                String message = String.valueOf(e.getMessage()).replace('\n', ' ');
+                out.write("ERROR " + message + "\n");
+            }
+            out.flush();
+        }
+        return true;
+    }
+
+    private void invalidate(String file) {
+        units.invalidate(file);
+        if (watchdog != null) {
+            watchdog.invalidate(file);
+        }
+        unitPaths = null;
+        stamps = null;
+        results.clear();
+        typeSolvers = null;
+    }
+
+    private String result(String file) throws Exception {
+        String lines = results.get(file);
+        if (lines != null) {
+            return lines;
+        }
+        if (!unitPaths().containsKey(Paths.get(file).normalize().toString())) {
+            throw new IllegalArgumentException("Not a unit under the roots: " + file);
+        }
+        if (typeSolvers == null) {
+            // stale facades keep their type solvers and caches alive
+            JavaParserFacade.clearInstances();
+            stamps = stamps();
+            typeSolvers = Main.discover(roots, units, classpath, typeIndex, null, watchdog);
+        }
+        DependencySink.Buffer buffer = new DependencySink.Buffer();
+        CompilationUnit cu = units.get(file);
+        if (cu != null) {
+            JavaParserFacade jp = JavaParserFacade.get(typeSolvers.typeSolver);
+            Runnable visit = () -> Main.print(cu, printer.apply(buffer), jp);
+            if (watchdog == null) {
+                visit.run();
+            } else {
+                // discovered again on the next request
+                watchdog.run(file, "print", visit, () -> typeSolvers = null);
+            }
+        }
+        lines = buffer.toString();
+        results.put(file, lines);
+        return lines;
+    }
+
+    private Map<String, String> unitPaths() {
+        if (unitPaths == null) {
+            unitPaths = new HashMap<>();
+            for (String root : roots) {
+                for (String path : units.paths(root)) {
+                    unitPaths.put(Paths.get(path).normalize().toString(), path);
+                }
+            }
+        }
+        return unitPaths;
+    }
+
+    // forgets the units changed since the type solvers were built; a changed directory may have
+    // files added or deleted, so it is forgotten too, and the roots walked again
+    private void refresh() {
+        if (stamps == null) {
+            return;
+        }
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> e : stamps.entrySet()) {
+            if (!stamp(e.getKey()).equals(e.getValue())) {
+                changed.add(e.getKey());
+            }
+        }
+        changed.forEach(this::invalidate);
+    }
+
+    private Map<String, String> stamps() {
+        Map<String, String> stamps = new HashMap<>();
+        for (String root : roots) {
+            try (Stream<Path> walk = Files.walk(Paths.get(root))) {
+                walk.filter(p -> Files.isDirectory(p) || p.toString().endsWith(".java"))
+                    .map(p -> p.toAbsolutePath().toString())
+                    .forEach(p -> stamps.put(p, stamp(p)));
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Cannot stat the units under " + root + ": " + e);
+            }
+        }
+        return stamps;
+    }
+
+    private static String stamp(String file) {
+        try {
+            Path p = Paths.get(file);
+            return Files.size(p) + "|" + Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
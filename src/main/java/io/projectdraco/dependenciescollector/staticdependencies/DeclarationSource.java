@@ -0,0 +1,342 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.*;
+import com.github.javaparser.ast.*;
+
+import java.nio.file.*;
+import java.util.*;
+
+// Source of a unit reduced to what discovery visits: type headers, member signatures, field
+// initializers and static imports are kept as written, while method, constructor and initializer
+// bodies become a "new T();" statement per object creation in them, in the order they appear.
+// Anonymous and local classes in bodies are kept, with their own bodies reduced the same way.
+// Comments are dropped.
+class DeclarationSource {
+
+    // neither comments nor tokens are of any use to discovery
+    private static final ParserConfiguration LEAN = new ParserConfiguration()
+        .setAttributeComments(false).setStoreTokens(false);
+
+    private static final Set<String> TYPE_KEYWORDS = new HashSet<>(Arrays.asList("class", "interface", "enum"));
+    private static final Set<String> PRIMITIVES = new HashSet<>(Arrays.asList(
+                "boolean", "byte", "char", "short", "int", "long", "float", "double", "void"));
+    private static final Set<String> CLASS_MODIFIERS = new HashSet<>(Arrays.asList("abstract", "final", "strictfp"));
+
+    private final String s;
+    private final StringBuilder out;
+    private final boolean bodies;
+    private int i;
+
+    private DeclarationSource(String source, boolean bodies) {
+        s = source;
+        out = new StringBuilder(source.length() / 2);
+        this.bodies = bodies;
+    }
+
+    // the unit reduced, or null if it could not be parsed so
+    public static CompilationUnit parse(String path, String content) {
+        try {
+            ParseResult<CompilationUnit> result = new JavaParser(LEAN)
+                .parse(ParseStart.COMPILATION_UNIT, Providers.provider(reduce(content)));
+            if (!result.isSuccessful() || !result.getResult().isPresent()) {
+                return null;
+            }
+            return result.getResult().get().setStorage(Paths.get(path));
+        } catch (RuntimeException | StackOverflowError e) {
+            return null;
+        }
+    }
+
+    public static String reduce(String source) {
+        DeclarationSource ds = new DeclarationSource(source, true);
+        ds.declarations(false);
+        return ds.out.toString();
+    }
+
+    // what other units may refer to: the declarations with empty bodies, whitespace collapsed
+    public static String signatures(String source) {
+        DeclarationSource ds = new DeclarationSource(source, false);
+        ds.declarations(false);
+        return ds.out.toString().replaceAll("\\s+", " ").trim();
+    }
+
+    // copies declarations up to and including the brace closing their body, or to the end
+    private void declarations(boolean enumBody) {
+        String keyword = null;
+        boolean assigned = false;
+        boolean afterDefault = false;
+        boolean constants = enumBody;
+        int parens = 0;
+        char previous = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (skipComment()) {
+                out.append(' ');
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                int start = i;
+                skipLiteral();
+                out.append(s, start, i);
+                previous = c;
+                continue;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                String word = identifier();
+                out.append(word);
+                if (TYPE_KEYWORDS.contains(word) && previous != '.' && parens == 0) {
+                    keyword = word;
+                }
+                afterDefault = word.equals("default");
+                previous = 'a';
+                continue;
+            }
+            i++;
+            if (Character.isWhitespace(c)) {
+                out.append(c);
+                continue;
+            }
+            afterDefault &= c == '@';
+            previous = c;
+            if (c == '(') {
+                parens++;
+            } else if (c == ')') {
+                parens--;
+            } else if (c == '=' && parens == 0) {
+                assigned = true;
+            } else if (c == ';' && parens == 0) {
+                keyword = null;
+                assigned = false;
+                constants = false;
+            } else if (c == '}') {
+                out.append(c);
+                return;
+            } else if (c == '{') {
+                if (parens > 0 || assigned || afterDefault) {
+                    // array initializers and initializer expressions are kept whole
+                    i--;
+                    copyBlock();
+                    continue;
+                }
+                out.append(c);
+                if (keyword != null) {
+                    declarations(keyword.equals("enum"));
+                } else if (constants) {
+                    // body of an enum constant
+                    declarations(false);
+                } else {
+                    scan('}');
+                    out.append('}');
+                }
+                keyword = null;
+                previous = '}';
+                continue;
+            }
+            out.append(c);
+        }
+    }
+
+    // skips to the closer matching the current nesting, emitting object creations and local classes
+    // if bodies are kept
+    private void scan(char closer) {
+        int depth = 0;
+        char previous = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (skipComment()) {
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                skipLiteral();
+                previous = c;
+                continue;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                String word = identifier();
+                if (bodies && word.equals("new")) {
+                    creation();
+                } else if (bodies && TYPE_KEYWORDS.contains(word) && previous != '.') {
+                    localClass(start);
+                }
+                previous = 'a';
+                continue;
+            }
+            i++;
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            previous = c;
+            if (c == '(' || c == '{' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == '}' || c == ']') {
+                if (depth-- == 0) {
+                    if (c != closer) {
+                        throw new IllegalArgumentException("Unbalanced " + c + " at " + i);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    // after "new": emits the created type, with its anonymous class body if any
+    private void creation() {
+        skipSpace();
+        if (i < s.length() && s.charAt(i) == '<') {
+            skipAngles();
+            skipSpace();
+        }
+        while (i < s.length() && s.charAt(i) == '@') {
+            i++;
+            identifier();
+            skipSpace();
+            if (i < s.length() && s.charAt(i) == '(') {
+                i++;
+                scan(')');
+                skipSpace();
+            }
+        }
+        int start = i;
+        StringBuilder type = new StringBuilder();
+        while (i < s.length() && Character.isJavaIdentifierStart(s.charAt(i))) {
+            type.append(identifier());
+            skipSpace();
+            if (i < s.length() && s.charAt(i) == '<') {
+                int from = i;
+                skipAngles();
+                type.append(s, from, i);
+                skipSpace();
+            }
+            if (i < s.length() && s.charAt(i) == '.') {
+                type.append('.');
+                i++;
+                skipSpace();
+            } else {
+                break;
+            }
+        }
+        if (i == start || PRIMITIVES.contains(type.toString()) || i >= s.length() || s.charAt(i) != '(') {
+            // array creations are no object creations
+            return;
+        }
+        i++;
+        scan(')');
+        skipSpace();
+        if (i < s.length() && s.charAt(i) == '{') {
+            i++;
+            out.append("new ").append(type).append("() {");
+            declarations(false);
+            out.append(";");
+        } else {
+            out.append("new ").append(type).append("();");
+        }
+    }
+
+    // a class declared in a body, its keyword at start and just read
+    private void localClass(int start) {
+        // the few modifiers a local class may have
+        int from = start;
+        for (int j = start; ; ) {
+            while (j > 0 && Character.isWhitespace(s.charAt(j - 1))) {
+                j--;
+            }
+            int end = j;
+            while (j > 0 && Character.isJavaIdentifierPart(s.charAt(j - 1))) {
+                j--;
+            }
+            if (j == end || !CLASS_MODIFIERS.contains(s.substring(j, end))) {
+                break;
+            }
+            from = j;
+        }
+        int header = s.indexOf('{', i);
+        if (header < 0) {
+            i = s.length();
+            return;
+        }
+        out.append(s, from, header + 1);
+        i = header + 1;
+        declarations(s.startsWith("enum", start));
+    }
+
+    private void copyBlock() {
+        int start = i;
+        int depth = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            int comment = i;
+            if (skipComment()) {
+                out.append(s, start, comment).append(' ');
+                start = i;
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                skipLiteral();
+                continue;
+            }
+            i++;
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                break;
+            }
+        }
+        out.append(s, start, i);
+    }
+
+    private boolean skipComment() {
+        if (s.charAt(i) != '/' || i + 1 >= s.length()) {
+            return false;
+        }
+        if (s.charAt(i + 1) == '/') {
+            int end = s.indexOf('\n', i);
+            i = end < 0 ? s.length() : end;
+            return true;
+        }
+        if (s.charAt(i + 1) == '*') {
+            int end = s.indexOf("*/", i + 2);
+            i = end < 0 ? s.length() : end + 2;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipLiteral() {
+        char quote = s.charAt(i++);
+        while (i < s.length() && s.charAt(i) != quote) {
+            i += s.charAt(i) == '\\' ? 2 : 1;
+        }
+        i++;
+    }
+
+    private void skipAngles() {
+        int depth = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i++);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>' && --depth == 0) {
+                return;
+            }
+        }
+    }
+
+    private void skipSpace() {
+        while (i < s.length()) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                i++;
+            } else if (!skipComment()) {
+                return;
+            }
+        }
+    }
+
+    private String identifier() {
+        int start = i;
+        while (i < s.length() && Character.isJavaIdentifierPart(s.charAt(i))) {
+            i++;
+        }
+        return s.substring(start, i);
+    }
+}
@@ -0,0 +1,29 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+// One dependency found by an Analyzer. Source and target are written the way the printers
+// write them, e.g. "a_B.java/[CN]/B/[MT]/m(int)".
+public class DependencyEdge {
+
+    public enum Kind {
+        METHOD, CONSTRUCTOR, FIELD, INHERITANCE, FIELD_TYPE
+    }
+
+    public final String source;
+    public final String target;
+    public final Kind kind;
+    // the analysed file the edge was found in
+    public final String file;
+
+    public DependencyEdge(String source, String target, Kind kind, String file) {
+        this.source = source;
+        this.target = target;
+        this.kind = kind;
+        this.file = file;
+    }
+
+    // the line the command line tool prints for this edge
+    public String toString() {
+        char separator = kind == Kind.INHERITANCE || kind == Kind.FIELD_TYPE ? '\t' : ' ';
+        return source + separator + target;
+    }
+}
@@ -0,0 +1,253 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+// Edges of the printers rolled up to classes, in compressed sparse row form, with their strongly
+// connected components, the cycles between packages and the coupling of each class, all found in
+// time linear in the number of edges. Self dependencies are ignored.
+class DependencyGraph {
+
+    // class symbols of the edges seen so far, as (source << 32 | target) pairs
+    private final LongIntMap pairs = new LongIntMap();
+    private long[] edges = new long[1024];
+    // class symbol of each symbol rolled up so far
+    private final IntIntMap classes = new IntIntMap();
+    // ends of the edges seen, interned whatever table they were printed with
+    private final Symbols table = new Symbols();
+    // index of the file name in a unit path, -1 if not known
+    private final ToIntFunction<String> fileStarts;
+
+    public DependencyGraph(ToIntFunction<String> fileStarts) {
+        this.fileStarts = fileStarts;
+    }
+
+    // passes edges given to out on to this graph as well
+    public DependencySink tee(DependencySink out) {
+        return new DependencySink() {
+            public void edge(CharSequence source, char separator, CharSequence target) {
+                add(table.id(source), table.id(target));
+                out.edge(source, separator, target);
+            }
+
+            public void edge(Symbols symbols, int source, char separator, int target) {
+                add(table.id(symbols.text(source)), table.id(symbols.text(target)));
+                out.edge(symbols, source, separator, target);
+            }
+
+            public void edge(Symbols symbols, int source, char separator, int target, int line) {
+                add(table.id(symbols.text(source)), table.id(symbols.text(target)));
+                out.edge(symbols, source, separator, target, line);
+            }
+
+            public void lines(CharSequence text) {
+                for (String line : text.toString().split("\n")) {
+                    if (!line.isEmpty()) {
+                        int split = EdgeListWriter.split(line);
+                        add(table.id(line.substring(0, split)), table.id(line.substring(split + 1)));
+                    }
+                }
+                out.lines(text);
+            }
+
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    public synchronized void add(int source, int target) {
+        source = rollUp(source);
+        target = rollUp(target);
+        if (source == target) {
+            return;
+        }
+        long pair = (long) source << 32 | target;
+        if (pairs.get(pair, -1) < 0) {
+            int i = pairs.size();
+            pairs.put(pair, i);
+            if (i == edges.length) {
+                edges = Arrays.copyOf(edges, i * 2);
+            }
+            edges[i] = pair;
+        }
+    }
+
+    private int rollUp(int symbol) {
+        int rolled = classes.get(symbol, -1);
+        if (rolled < 0) {
+            rolled = table.id(AggregatingSink.rollUp(table.text(symbol), AggregatingSink.Level.CLASS, fileStarts));
+            classes.put(symbol, rolled);
+        }
+        return rolled;
+    }
+
+    public synchronized void report(String file) throws IOException {
+        long start = System.nanoTime();
+        Csr classGraph = new Csr(pairs.size(), i -> edges[i]);
+        // package of each class, then the distinct dependencies between packages
+        int[] packageOfNode = new int[classGraph.symbols.length];
+        for (int v = 0; v < packageOfNode.length; v++) {
+            packageOfNode[v] = table.id(AggregatingSink.rollUp(table.text(classGraph.symbols[v]), AggregatingSink.Level.PACKAGE, fileStarts));
+        }
+        LongIntMap packagePairs = new LongIntMap();
+        long[] packageEdges = new long[Math.max(1, classGraph.targets.length)];
+        for (int v = 0; v < packageOfNode.length; v++) {
+            for (int e = classGraph.offsets[v]; e < classGraph.offsets[v + 1]; e++) {
+                int p = packageOfNode[v], q = packageOfNode[classGraph.targets[e]];
+                long pair = (long) p << 32 | q;
+                if (p != q && packagePairs.get(pair, -1) < 0) {
+                    packageEdges[packagePairs.size()] = pair;
+                    packagePairs.put(pair, packagePairs.size());
+                }
+            }
+        }
+        Csr packageGraph = new Csr(packagePairs.size(), i -> packageEdges[i]);
+        List<List<String>> classCycles = classGraph.cycles(table);
+        List<List<String>> packageCycles = packageGraph.cycles(table);
+        int[] fanIn = new int[classGraph.symbols.length];
+        for (int t : classGraph.targets) {
+            fanIn[t]++;
+        }
+        List<String> metrics = new ArrayList<>();
+        for (int v = 0; v < fanIn.length; v++) {
+            int fanOut = classGraph.offsets[v + 1] - classGraph.offsets[v];
+            metrics.add(String.format(Locale.ROOT, "%s\t%d\t%d\t%.2f", table.text(classGraph.symbols[v]),
+                        fanIn[v], fanOut, (double) fanOut / (fanIn[v] + fanOut)));
+        }
+        Collections.sort(metrics);
+        try (Writer w = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            w.write(String.format("# classes %d, dependencies %d, cyclic components %d\n",
+                        classGraph.symbols.length, classGraph.targets.length, classCycles.size()));
+            for (List<String> c : classCycles) {
+                w.write("component\t" + c.size() + "\t" + String.join("\t", c) + "\n");
+            }
+            w.write(String.format("# packages %d, dependencies %d, package cycles %d\n",
+                        packageGraph.symbols.length, packageGraph.targets.length, packageCycles.size()));
+            for (List<String> c : packageCycles) {
+                w.write("package-cycle\t" + c.size() + "\t" + String.join("\t", c) + "\n");
+            }
+            w.write("# class\tfan-in\tfan-out\tinstability\n");
+            for (String m : metrics) {
+                w.write(m + "\n");
+            }
+        }
+        System.err.println(String.format("Graph: %d classes, %d dependencies, %d cyclic components, %d package cycles, %d ms",
+                    classGraph.symbols.length, classGraph.targets.length, classCycles.size(), packageCycles.size(),
+                    (System.nanoTime() - start) / 1000000));
+    }
+
+    // nodes numbered densely, the targets of node v being targets[offsets[v]] to targets[offsets[v + 1] - 1]
+    private static class Csr {
+        final int[] symbols;
+        final int[] offsets;
+        final int[] targets;
+
+        Csr(int edgeCount, IntToLongFunction edge) {
+            IntIntMap nodes = new IntIntMap();
+            int[] symbols = new int[16];
+            int[] sources = new int[edgeCount];
+            int[] ends = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                long pair = edge.applyAsLong(i);
+                for (int end = 0; end < 2; end++) {
+                    int symbol = (int) (end == 0 ? pair >>> 32 : pair);
+                    int v = nodes.get(symbol, -1);
+                    if (v < 0) {
+                        v = nodes.size();
+                        nodes.put(symbol, v);
+                        if (v == symbols.length) {
+                            symbols = Arrays.copyOf(symbols, v * 2);
+                        }
+                        symbols[v] = symbol;
+                    }
+                    if (end == 0) {
+                        sources[i] = v;
+                    } else {
+                        ends[i] = v;
+                    }
+                }
+            }
+            this.symbols = Arrays.copyOf(symbols, nodes.size());
+            offsets = new int[this.symbols.length + 1];
+            for (int s : sources) {
+                offsets[s + 1]++;
+            }
+            for (int v = 0; v < this.symbols.length; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            targets = new int[edgeCount];
+            int[] next = Arrays.copyOf(offsets, this.symbols.length);
+            for (int i = 0; i < edgeCount; i++) {
+                targets[next[sources[i]]++] = ends[i];
+            }
+        }
+
+        // components of more than one node, sorted, found by Tarjan's algorithm without recursion
+        List<List<String>> cycles(Symbols table) {
+            int n = symbols.length;
+            int[] index = new int[n];
+            int[] low = new int[n];
+            boolean[] onStack = new boolean[n];
+            Arrays.fill(index, -1);
+            int[] stack = new int[n];
+            int stackSize = 0;
+            // nodes being visited and the next of their edges to follow
+            int[] calls = new int[n];
+            int[] nextEdge = new int[n];
+            int counter = 0;
+            List<List<String>> cycles = new ArrayList<>();
+            for (int root = 0; root < n; root++) {
+                if (index[root] >= 0) {
+                    continue;
+                }
+                int depth = 0;
+                calls[depth] = root;
+                nextEdge[depth] = offsets[root];
+                index[root] = low[root] = counter++;
+                stack[stackSize++] = root;
+                onStack[root] = true;
+                while (depth >= 0) {
+                    int v = calls[depth];
+                    if (nextEdge[depth] < offsets[v + 1]) {
+                        int w = targets[nextEdge[depth]++];
+                        if (index[w] < 0) {
+                            index[w] = low[w] = counter++;
+                            stack[stackSize++] = w;
+                            onStack[w] = true;
+                            depth++;
+                            calls[depth] = w;
+                            nextEdge[depth] = offsets[w];
+                        } else if (onStack[w]) {
+                            low[v] = Math.min(low[v], index[w]);
+                        }
+                        continue;
+                    }
+                    if (low[v] == index[v]) {
+                        List<String> component = new ArrayList<>();
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            component.add(table.text(symbols[w]));
+                        } while (w != v);
+                        if (component.size() > 1) {
+                            Collections.sort(component);
+                            cycles.add(component);
+                        }
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        low[calls[depth]] = Math.min(low[calls[depth]], low[v]);
+                    }
+                }
+            }
+            // largest first
+            cycles.sort(Comparator.<List<String>>comparingInt(List::size).reversed().thenComparing(c -> c.get(0)));
+            return cycles;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.util.*;
+
+interface DependencySink extends Closeable {
+
+    // one edge, printed as source, separator and target on a line of its own
+    void edge(CharSequence source, char separator, CharSequence target);
+
+    // the same, with both ends interned in the given symbols
+    default void edge(Symbols symbols, int source, char separator, int target) {
+        edge(symbols.text(source), separator, symbols.text(target));
+    }
+
+    // the same, printed from the given source line (-1 if unknown)
+    default void edge(Symbols symbols, int source, char separator, int target, int line) {
+        edge(symbols, source, separator, target);
+    }
+
+    // complete lines, such as the ones kept for a unit by a previous run
+    void lines(CharSequence lines);
+
+    // collects the lines of a single unit
+    class Buffer implements DependencySink {
+        private final StringBuilder sb = new StringBuilder();
+        // source, separator, target and line of the interned edges not yet appended to sb
+        private int[] edges = new int[0];
+        private int size;
+        // symbols the ends of those edges are interned in, those of a single run
+        private Symbols symbols;
+
+        public void edge(CharSequence source, char separator, CharSequence target) {
+            append();
+            sb.append(source).append(separator).append(target).append('\n');
+        }
+
+        public void edge(Symbols symbols, int source, char separator, int target) {
+            edge(symbols, source, separator, target, -1);
+        }
+
+        public void edge(Symbols symbols, int source, char separator, int target, int line) {
+            if (this.symbols != symbols) {
+                append();
+                this.symbols = symbols;
+            }
+            if (size + 4 > edges.length) {
+                edges = Arrays.copyOf(edges, Math.max(64, edges.length * 2));
+            }
+            edges[size++] = source;
+            edges[size++] = separator;
+            edges[size++] = target;
+            edges[size++] = line;
+        }
+
+        public void lines(CharSequence lines) {
+            append();
+            sb.append(lines);
+        }
+
+        // gives what was collected to another sink, with the lines edges were printed from
+        public void copyTo(DependencySink out) {
+            if (sb.length() > 0) {
+                out.lines(sb);
+            }
+            for (int i = 0; i < size; i += 4) {
+                out.edge(symbols, edges[i], (char) edges[i + 1], edges[i + 2], edges[i + 3]);
+            }
+        }
+
+        private void append() {
+            for (int i = 0; i < size; i += 4) {
+                sb.append(symbols.text(edges[i])).append((char) edges[i + 1]).append(symbols.text(edges[i + 2])).append('\n');
+            }
+            size = 0;
+        }
+
+        public void close() {
+        }
+
+        public String toString() {
+            append();
+            return sb.toString();
+        }
+    }
+}
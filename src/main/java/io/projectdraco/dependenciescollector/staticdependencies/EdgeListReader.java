@@ -0,0 +1,109 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Reads the binary edge lists written with --binary
+public class EdgeListReader {
+
+    private final char separator;
+    private final String[] strings;
+    private final int[] nodeUnits;
+    private final int[] nodeTypes;
+    private final int[] nodeKinds;
+    private final int[] nodeSignatures;
+    private final int[] sources;
+    private final int[] targets;
+
+    public EdgeListReader(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != EdgeListWriter.MAGIC || buffer.getInt() != EdgeListWriter.VERSION) {
+                throw new IOException(file + " is not a binary edge list");
+            }
+            separator = buffer.getChar();
+            strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int nodeCount = buffer.getInt();
+            nodeUnits = ints(buffer, nodeCount);
+            nodeTypes = ints(buffer, nodeCount);
+            nodeKinds = ints(buffer, nodeCount);
+            nodeSignatures = ints(buffer, nodeCount);
+            int edgeCount = buffer.getInt();
+            sources = ints(buffer, edgeCount);
+            targets = ints(buffer, edgeCount);
+        }
+    }
+
+    private static int[] ints(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    public int edgeCount() {
+        return sources.length;
+    }
+
+    public int source(int edge) {
+        return sources[edge];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    public int nodeCount() {
+        return nodeUnits.length;
+    }
+
+    public String compilationUnit(int node) {
+        return nodeKinds[node] == EdgeListWriter.RAW ? null : strings[nodeUnits[node]];
+    }
+
+    // null for compilation unit nodes
+    public String type(int node) {
+        return nodeTypes[node] < 0 ? null : strings[nodeTypes[node]];
+    }
+
+    // [MT], [CS] or [FE], null for compilation unit nodes
+    public String kind(int node) {
+        String marker = EdgeListWriter.KIND_MARKERS[nodeKinds[node]];
+        return marker == null ? null : marker.substring(1, marker.length() - 1);
+    }
+
+    public String signature(int node) {
+        return nodeSignatures[node] < 0 ? null : strings[nodeSignatures[node]];
+    }
+
+    // the node as the text printers write it
+    public String node(int node) {
+        byte kind = (byte) nodeKinds[node];
+        if (kind == EdgeListWriter.RAW) {
+            return strings[nodeUnits[node]];
+        }
+        String unit = strings[nodeUnits[node]] + EdgeListWriter.UNIT_MARKER;
+        if (kind == EdgeListWriter.UNIT) {
+            return unit;
+        }
+        return unit + strings[nodeTypes[node]] + EdgeListWriter.KIND_MARKERS[kind] + strings[nodeSignatures[node]];
+    }
+
+    public void writeText(Writer out) throws IOException {
+        for (int i = 0; i < sources.length; i++) {
+            out.write(node(sources[i]));
+            out.write(separator);
+            out.write(node(targets[i]));
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
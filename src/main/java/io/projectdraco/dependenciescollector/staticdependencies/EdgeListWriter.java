@@ -0,0 +1,229 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Binary edge list: a string table, a columnar node table (compilation unit, type, kind, signature)
+// and two int columns with the source and target node of every edge, in the order they were printed.
+class EdgeListWriter implements DependencySink {
+
+    static final int MAGIC = 0x53444345; // "SDCE"
+    static final int VERSION = 1;
+
+    // node kinds; RAW nodes keep the whole printed text in their compilation unit column
+    static final byte RAW = 0;
+    static final byte UNIT = 1;
+    static final byte METHOD = 2;
+    static final byte CONSTRUCTOR = 3;
+    static final byte FIELD = 4;
+    static final String[] KIND_MARKERS = { null, null, "/[MT]/", "/[CS]/", "/[FE]/" };
+    static final String UNIT_MARKER = "/[CN]/";
+
+    private final Path file;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringTable = new ArrayList<>();
+    private final Map<String, Integer> nodes = new HashMap<>();
+    // node of each symbol of the table seen so far
+    private IntIntMap symbolNodes = new IntIntMap();
+    private Symbols symbols;
+    private final IntColumn nodeUnits = new IntColumn();
+    private final IntColumn nodeTypes = new IntColumn();
+    private final IntColumn nodeKinds = new IntColumn();
+    private final IntColumn nodeSignatures = new IntColumn();
+    private final IntColumn sources = new IntColumn();
+    private final IntColumn targets = new IntColumn();
+    private char separator = ' ';
+
+    public EdgeListWriter(String file) {
+        this.file = Paths.get(file);
+    }
+
+    // adds every "source<separator>target" line
+    public synchronized void lines(CharSequence text) {
+        String lines = text.toString();
+        int start = 0;
+        while (start < lines.length()) {
+            int end = lines.indexOf('\n', start);
+            if (end < 0) {
+                end = lines.length();
+            }
+            if (end > start) {
+                addLine(lines.substring(start, end));
+            }
+            start = end + 1;
+        }
+    }
+
+    private void addLine(String line) {
+        int split = split(line);
+        edge(line.substring(0, split), line.charAt(split), line.substring(split + 1));
+    }
+
+    // index of the separator of a "source<separator>target" line. Unit paths may hold blanks, and so
+    // may parameter lists of sources, so when both ends name a unit the separator is the first blank
+    // after the source's unit outside parentheses; a source of no unit ends at the last blank before
+    // the target's unit, which then must hold none.
+    static int split(String line) {
+        int first = line.indexOf(UNIT_MARKER);
+        int marker = line.lastIndexOf(UNIT_MARKER);
+        if (first >= 0 && first < marker) {
+            int depth = 0;
+            for (int i = first + UNIT_MARKER.length(); i < marker; i++) {
+                char c = line.charAt(i);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (depth == 0 && Character.isWhitespace(c)) {
+                    return i;
+                }
+            }
+        }
+        int split = marker < 0 ? line.length() - 1 : marker;
+        while (split > 0 && !Character.isWhitespace(line.charAt(split))) {
+            split--;
+        }
+        if (split <= 0) {
+            throw new IllegalArgumentException("Not an edge: " + line);
+        }
+        return split;
+    }
+
+    public synchronized void edge(CharSequence source, char separator, CharSequence target) {
+        this.separator = separator;
+        sources.add(node(source.toString()));
+        targets.add(node(target.toString()));
+    }
+
+    public synchronized void edge(Symbols symbols, int source, char separator, int target) {
+        if (this.symbols != symbols) {
+            symbolNodes = new IntIntMap();
+            this.symbols = symbols;
+        }
+        this.separator = separator;
+        sources.add(symbolNode(source));
+        targets.add(symbolNode(target));
+    }
+
+    private int symbolNode(int symbol) {
+        int node = symbolNodes.get(symbol, -1);
+        if (node < 0) {
+            node = node(symbols.text(symbol));
+            symbolNodes.put(symbol, node);
+        }
+        return node;
+    }
+
+    private int node(String s) {
+        Integer id = nodes.get(s);
+        if (id != null) {
+            return id;
+        }
+        id = nodes.size();
+        nodes.put(s, id);
+        int unit = -1, type = -1, signature = -1;
+        byte kind = RAW;
+        int marker = s.indexOf(UNIT_MARKER);
+        if (marker >= 0) {
+            String rest = s.substring(marker + UNIT_MARKER.length());
+            if (rest.isEmpty()) {
+                kind = UNIT;
+            } else {
+                int k = rest.indexOf("/[");
+                for (byte i = METHOD; k >= 0 && i <= FIELD; i++) {
+                    if (rest.startsWith(KIND_MARKERS[i], k)) {
+                        kind = i;
+                        type = string(rest.substring(0, k));
+                        signature = string(rest.substring(k + KIND_MARKERS[i].length()));
+                    }
+                }
+            }
+        }
+        unit = string(kind == RAW ? s : s.substring(0, marker));
+        nodeUnits.add(unit);
+        nodeTypes.add(type);
+        nodeKinds.add(kind);
+        nodeSignatures.add(signature);
+        return id;
+    }
+
+    private int string(String s) {
+        Integer id = strings.get(s);
+        if (id == null) {
+            id = stringTable.size();
+            strings.put(s, id);
+            stringTable.add(s);
+        }
+        return id;
+    }
+
+    public synchronized void close() throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putInt(MAGIC).putInt(VERSION).putChar(separator);
+            buffer.putInt(stringTable.size());
+            for (String s : stringTable) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                ensure(channel, buffer, 4);
+                buffer.putInt(bytes.length);
+                for (int off = 0; off < bytes.length; ) {
+                    ensure(channel, buffer, 1);
+                    int len = Math.min(buffer.remaining(), bytes.length - off);
+                    buffer.put(bytes, off, len);
+                    off += len;
+                }
+            }
+            ensure(channel, buffer, 4);
+            buffer.putInt(nodes.size());
+            for (IntColumn column : Arrays.asList(nodeUnits, nodeTypes, nodeKinds, nodeSignatures)) {
+                column.write(channel, buffer);
+            }
+            ensure(channel, buffer, 4);
+            buffer.putInt(sources.size);
+            sources.write(channel, buffer);
+            targets.write(channel, buffer);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static class IntColumn {
+        int[] values = new int[1024];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+            for (int i = 0; i < size; ) {
+                ensure(channel, buffer, 4);
+                IntBuffer ints = buffer.asIntBuffer();
+                int len = Math.min(ints.remaining(), size - i);
+                ints.put(values, i, len);
+                buffer.position(buffer.position() + len * 4);
+                i += len;
+            }
+        }
+    }
+}
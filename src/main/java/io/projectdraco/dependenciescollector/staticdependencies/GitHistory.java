@@ -0,0 +1,284 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.visitor.*;
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+// Analyses every revision of a rev-list range, reading blobs from the object store of the
+// repository instead of checking revisions out. Only the .java files under the roots are mirrored
+// into a scratch directory, and between revisions only the blobs that differ are written. ASTs of
+// unchanged files stay parsed, and unit results are reused while neither their blob nor the blobs
+// they depend on change. For each revision, prints "commit <id>" followed by "+ <edge>" and
+// "- <edge>" lines with the edges added and removed since the previous one.
+class GitHistory {
+
+    private final String repository;
+    private final String range;
+    private final String[] roots;
+
+    // roots are directories within the repository
+    public GitHistory(String repository, String range, String[] roots) {
+        this.repository = repository;
+        this.range = range;
+        this.roots = roots;
+    }
+
+    public void run(Function<DependencySink, VoidVisitor<JavaParserFacade>> printer, String mode,
+            ClasspathTypeSolver.Index classpath, ParsedUnitStore units, Watchdog watchdog,
+            DependencySink out) throws Exception {
+        Path mirror = Files.createTempDirectory("static-dependencies-history").toAbsolutePath();
+        String[] mirrorRoots = new String[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            mirrorRoots[i] = mirror.resolve(roots[i]).normalize().toString();
+            Files.createDirectories(Paths.get(mirrorRoots[i]));
+        }
+        String typeIndex = mirror.resolve(".types.idx").toString();
+        IncrementalStore results = new IncrementalStore();
+        // blob of each mirrored file
+        Map<String, String> blobs = new HashMap<>();
+        Set<String> edges = new HashSet<>();
+        String previous = null;
+        int revisions = 0;
+        try (CatFile catFile = new CatFile(repository)) {
+            for (String commit : git("rev-list", "--reverse", range)) {
+                long start = System.nanoTime();
+                units.beginPass();
+                List<String[]> changes = previous == null ? listTree(commit) : diffTree(previous, commit);
+                for (String[] change : changes) {
+                    Path file = mirror.resolve(change[1]);
+                    String path = file.toString();
+                    units.invalidate(path);
+                    if (watchdog != null) {
+                        watchdog.invalidate(path);
+                    }
+                    if (change[0] == null) {
+                        Files.deleteIfExists(file);
+                        blobs.remove(path);
+                    } else {
+                        Files.createDirectories(file.getParent());
+                        Files.write(file, catFile.blob(change[0]));
+                        blobs.put(path, change[0]);
+                    }
+                }
+                if (!changes.isEmpty()) {
+                    // modification times of rewritten files may not tell it is stale
+                    Files.deleteIfExists(Paths.get(typeIndex));
+                }
+                JavaParserFacade.clearInstances();
+                Main.TypeSolvers typeSolvers = Main.discover(mirrorRoots, units, classpath, typeIndex, null, watchdog);
+                // a fresh copy of the type solvers once the watchdog stopped a unit that used them
+                JavaParserFacade[] jp = { JavaParserFacade.get(typeSolvers.typeSolver) };
+                Runnable reset = () -> {
+                    JavaParserFacade.clearInstances();
+                    jp[0] = JavaParserFacade.get(typeSolvers.copy().typeSolver);
+                };
+                List<String> paths = new ArrayList<>();
+                for (String root : mirrorRoots) {
+                    paths.addAll(units.paths(root));
+                }
+                results.begin(paths, typeSolvers.externalsFingerprint());
+                results.setContentHashes(blobs);
+                Set<String> current = new HashSet<>();
+                for (String path : paths) {
+                    String lines = results.freshLines(path);
+                    if (lines == null) {
+                        DependencySink.Buffer buffer = new DependencySink.Buffer();
+                        CompilationUnit cu = units.get(path);
+                        Set<String> dependencies = Collections.emptySet();
+                        if (cu != null) {
+                            RoutingTypeSolver solver = (RoutingTypeSolver) jp[0].getTypeSolver();
+                            solver.startRecording();
+                            Runnable visit = () -> Main.print(cu, printer.apply(buffer), jp[0]);
+                            if (watchdog == null) {
+                                visit.run();
+                            } else {
+                                watchdog.run(path, "print", visit, reset);
+                            }
+                            dependencies = solver.stopRecording();
+                        }
+                        lines = buffer.toString();
+                        results.record(path, lines, dependencies);
+                    }
+                    for (String line : lines.split("\n")) {
+                        if (!line.isEmpty()) {
+                            current.add(line);
+                        }
+                    }
+                }
+                printDelta(commit, edges, current, out);
+                edges = current;
+                results.advance();
+                previous = commit;
+                revisions++;
+                System.err.println(String.format("Revision %s: %d files changed, %d units, %d ms",
+                            commit, changes.size(), paths.size(), (System.nanoTime() - start) / 1000000));
+            }
+        } finally {
+            delete(mirror);
+        }
+        System.err.println("History: analysed " + revisions + " revisions (" + mode + ")");
+        results.report(System.err);
+    }
+
+    private static void printDelta(String commit, Set<String> before, Set<String> after, DependencySink out) {
+        StringBuilder sb = new StringBuilder("commit ").append(commit).append('\n');
+        for (String edge : new TreeSet<>(after)) {
+            if (!before.contains(edge)) {
+                sb.append("+ ").append(edge).append('\n');
+            }
+        }
+        for (String edge : new TreeSet<>(before)) {
+            if (!after.contains(edge)) {
+                sb.append("- ").append(edge).append('\n');
+            }
+        }
+        out.lines(sb);
+    }
+
+    // blob and path of every .java file under the roots
+    private List<String[]> listTree(String commit) throws IOException {
+        List<String[]> files = new ArrayList<>();
+        for (String entry : split(gitBytes(command("ls-tree", "-r", "-z", "--full-tree", commit)), 0)) {
+            // <mode> SP <type> SP <object> TAB <path>
+            int tab = entry.indexOf('\t');
+            String[] meta = entry.substring(0, tab).split(" ");
+            String path = entry.substring(tab + 1);
+            if (meta[1].equals("blob") && isSource(path)) {
+                files.add(new String[] { meta[2], path });
+            }
+        }
+        return files;
+    }
+
+    // new blob (null if deleted) and path of every .java file under the roots that differs
+    private List<String[]> diffTree(String from, String to) throws IOException {
+        List<String[]> files = new ArrayList<>();
+        List<String> fields = split(gitBytes(command("diff-tree", "-r", "-z", "--no-renames", from, to)), 0);
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            // :<old mode> <new mode> <old object> <new object> <status> NUL <path>
+            String[] meta = fields.get(i).split(" ");
+            String path = fields.get(i + 1);
+            if (isSource(path)) {
+                boolean deleted = meta[4].startsWith("D") || meta[1].equals("160000");
+                files.add(new String[] { deleted ? null : meta[3], path });
+            }
+        }
+        return files;
+    }
+
+    private boolean isSource(String path) {
+        if (!path.endsWith(".java")) {
+            return false;
+        }
+        for (String root : roots) {
+            String r = Paths.get(root).normalize().toString();
+            if (r.isEmpty() || path.startsWith(r + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> command(String... args) {
+        List<String> command = new ArrayList<>(Arrays.asList("git", "-C", repository));
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    private List<String> git(String... args) throws IOException {
+        return split(gitBytes(command(args)), '\n');
+    }
+
+    private static byte[] gitBytes(List<String> command) throws IOException {
+        Process p = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = p.getInputStream()) {
+            byte[] buffer = new byte[1 << 16];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        try {
+            if (p.waitFor() != 0) {
+                throw new RuntimeException(String.join(" ", command) + " exited with status " + p.exitValue());
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> split(byte[] bytes, int separator) {
+        List<String> fields = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == separator) {
+                fields.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        if (start < bytes.length) {
+            fields.add(new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8));
+        }
+        return fields;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        Files.walk(dir).forEach(paths::add);
+        Collections.reverse(paths);
+        for (Path p : paths) {
+            Files.delete(p);
+        }
+    }
+
+    // a single git cat-file --batch process answering blob requests in order
+    private static class CatFile implements Closeable {
+        private final Process process;
+        private final OutputStream requests;
+        private final DataInputStream answers;
+
+        CatFile(String repository) throws IOException {
+            process = new ProcessBuilder("git", "-C", repository, "cat-file", "--batch")
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            requests = new BufferedOutputStream(process.getOutputStream());
+            answers = new DataInputStream(new BufferedInputStream(process.getInputStream(), 1 << 16));
+        }
+
+        byte[] blob(String id) throws IOException {
+            requests.write((id + "\n").getBytes(StandardCharsets.US_ASCII));
+            requests.flush();
+            // <object> SP <type> SP <size> LF <contents> LF
+            StringBuilder header = new StringBuilder();
+            for (int c = answers.read(); c != '\n'; c = answers.read()) {
+                if (c < 0) {
+                    throw new EOFException("git cat-file ended");
+                }
+                header.append((char) c);
+            }
+            String[] fields = header.toString().split(" ");
+            if (fields.length < 3) {
+                throw new IOException("Cannot read blob " + id + ": " + header);
+            }
+            byte[] contents = new byte[Integer.parseInt(fields[2])];
+            answers.readFully(contents);
+            answers.read();
+            return contents;
+        }
+
+        public void close() throws IOException {
+            requests.close();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
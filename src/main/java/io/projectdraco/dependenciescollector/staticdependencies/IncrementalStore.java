@@ -0,0 +1,218 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Results of the units of a run, kept for the next one. A unit's results depend on its own
+// content and on the declarations of the units its resolutions landed in, recorded with the
+// signature hashes those units had, so a unit is analysed again only when it changed or one of
+// them declares something else. Units that were added can capture names resolved elsewhere before,
+// so a different set of units makes every result stale.
+class IncrementalStore {
+
+    private final Path file;
+    private Map<String, Entry> previous = new HashMap<>();
+    private Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final Map<String, String> contentHashes = new ConcurrentHashMap<>();
+    private final Map<String, String> declarationsHashes = new HashMap<>();
+    // path of each unit of the run by its absolute normalized file
+    private final Map<String, String> paths = new HashMap<>();
+    private String previousExternals;
+    private String externals;
+    private String previousUnits;
+    private String units;
+    private final AtomicInteger reused = new AtomicInteger();
+    private final AtomicInteger analysed = new AtomicInteger();
+
+    private static class Entry {
+        String contentHash;
+        String declarationsHash;
+        // signature hash of each unit the results were resolved against
+        Map<String, String> dependencies = new TreeMap<>();
+        String lines;
+    }
+
+    // results of each printer mode are kept in their own index file
+    public IncrementalStore(String dir, String mode) throws IOException {
+        Files.createDirectories(Paths.get(dir));
+        file = Paths.get(dir, mode + ".index");
+        if (Files.exists(file)) {
+            load();
+        }
+    }
+
+    // results kept in memory only, for runs over successive states of the same units
+    public IncrementalStore() {
+        file = null;
+    }
+
+    // paths are all units of this run, externals a fingerprint of the external declarations they produced
+    public void begin(Collection<String> paths, String externals) {
+        StringBuilder sb = new StringBuilder();
+        for (String path : new TreeSet<>(paths)) {
+            declarationsHashes.put(path, declarationsHash(path));
+            this.paths.put(normalize(path), path);
+            sb.append(path).append('\n');
+        }
+        this.externals = externals;
+        units = hash(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // a unit is fresh if neither its content, the declarations of the units it depends on,
+    // the set of units, nor the external declarations changed since it was analysed
+    public String freshLines(String path) {
+        Entry e = previous.get(path);
+        if (e == null || !externals.equals(previousExternals) || !units.equals(previousUnits) ||
+                !e.contentHash.equals(contentHash(path))) {
+            return null;
+        }
+        for (Map.Entry<String, String> d : e.dependencies.entrySet()) {
+            if (!d.getValue().equals(declarationsHashes.get(d.getKey()))) {
+                return null;
+            }
+        }
+        current.put(path, e);
+        reused.incrementAndGet();
+        return e.lines;
+    }
+
+    // content hashes known without reading the units, such as git blob ids
+    public void setContentHashes(Map<String, String> hashes) {
+        contentHashes.putAll(hashes);
+    }
+
+    // the results of this run become the previous ones of the next
+    public void advance() {
+        previous = current;
+        current = new ConcurrentHashMap<>();
+        previousExternals = externals;
+        previousUnits = units;
+        contentHashes.clear();
+        declarationsHashes.clear();
+        paths.clear();
+    }
+
+    // files are those of the source types the unit's resolutions landed in
+    public void record(String path, String lines, Collection<String> files) {
+        Entry e = new Entry();
+        e.contentHash = contentHash(path);
+        e.declarationsHash = declarationsHashes.get(path);
+        for (String f : files) {
+            String dependency = paths.get(normalize(f));
+            if (dependency != null && !dependency.equals(path)) {
+                e.dependencies.put(dependency, declarationsHashes.get(dependency));
+            }
+        }
+        e.lines = lines;
+        current.put(path, e);
+        analysed.incrementAndGet();
+    }
+
+    public void save() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write("X\t" + externals + "\n");
+            w.write("P\t" + units + "\n");
+            for (Map.Entry<String, Entry> me : new TreeMap<>(current).entrySet()) {
+                Entry e = me.getValue();
+                w.write("U\t" + me.getKey() + "\t" + e.contentHash + "\t" + e.declarationsHash + "\n");
+                for (Map.Entry<String, String> d : e.dependencies.entrySet()) {
+                    w.write("D\t" + d.getKey() + "\t" + d.getValue() + "\n");
+                }
+                for (String line : e.lines.split("\n", -1)) {
+                    if (line.length() > 0) {
+                        w.write("L\t" + line + "\n");
+                    }
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void report(PrintStream out) {
+        out.println(String.format("Incremental: reused %d units, analysed %d", reused.get(), analysed.get()));
+    }
+
+    private void load() throws IOException {
+        Entry e = null;
+        StringBuilder lines = new StringBuilder();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] cols = line.split("\t", 2);
+            if (cols[0].equals("X")) {
+                previousExternals = cols[1];
+            } else if (cols[0].equals("P")) {
+                previousUnits = cols[1];
+            } else if (cols[0].equals("U")) {
+                if (e != null) {
+                    e.lines = lines.toString();
+                }
+                String[] u = cols[1].split("\t");
+                e = new Entry();
+                e.contentHash = u[1];
+                e.declarationsHash = u[2];
+                previous.put(u[0], e);
+                lines.setLength(0);
+            } else if (cols[0].equals("D") && e != null) {
+                int tab = cols[1].lastIndexOf('\t');
+                if (tab > 0) {
+                    e.dependencies.put(cols[1].substring(0, tab), cols[1].substring(tab + 1));
+                }
+            } else if (cols[0].equals("L")) {
+                lines.append(cols[1]).append('\n');
+            }
+        }
+        if (e != null) {
+            e.lines = lines.toString();
+        }
+    }
+
+    private String contentHash(String path) {
+        return contentHashes.computeIfAbsent(path, p -> {
+            try {
+                return hash(Files.readAllBytes(Paths.get(p)));
+            } catch (IOException e) {
+                return "";
+            }
+        });
+    }
+
+    // the unit's signatures, those of its previous content if that did not change
+    private String declarationsHash(String path) {
+        Entry e = previous.get(path);
+        if (e != null && e.contentHash.equals(contentHash(path))) {
+            return e.declarationsHash;
+        }
+        try {
+            String content = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+            try {
+                content = DeclarationSource.signatures(content);
+            } catch (RuntimeException ex) {
+                // the whole content then, which changes whenever the signatures could
+            }
+            return hash(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            return "";
+        }
+    }
+
+    private static String normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    static String hash(byte[] bytes) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.body.*;
+import com.github.javaparser.resolution.declarations.*;
+import com.github.javaparser.symbolsolver.javaparser.*;
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+import com.github.javaparser.symbolsolver.model.resolution.*;
+
+import java.util.*;
+import java.util.function.*;
+
+// Resolves the types of one root through a TypeIndex, with the same lookup order as
+// JavaParserTypeSolver but without probing the file system. The index is only used while every
+// file is as it was indexed, so its entries are taken as found and only the units that declare a
+// requested type are loaded. When units may be evicted, only where types are is remembered, since
+// declarations keep their whole unit alive.
+class IndexedTypeSolver implements TypeSolver {
+
+    private final TypeIndex index;
+    private final int root;
+    private final Function<String, CompilationUnit> units;
+    private final boolean keepDeclarations;
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> found = new HashMap<>();
+    // file and type name each name was found at, empty if none
+    private final Map<String, String[]> located = new HashMap<>();
+    private TypeSolver parent;
+
+    public IndexedTypeSolver(TypeIndex index, int root, Function<String, CompilationUnit> units, boolean keepDeclarations) {
+        this.index = index;
+        this.root = root;
+        this.units = units;
+        this.keepDeclarations = keepDeclarations;
+    }
+
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+    }
+
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        if (!keepDeclarations) {
+            String[] location = located.computeIfAbsent(name, this::locate);
+            return location.length == 0 ? unsolved() : declaration(location[0], location[1]);
+        }
+        SymbolReference<ResolvedReferenceTypeDeclaration> result = found.get(name);
+        if (result == null) {
+            String[] location = locate(name);
+            result = location.length == 0 ? unsolved() : declaration(location[0], location[1]);
+            found.put(name, result);
+        }
+        return result;
+    }
+
+    private String[] locate(String name) {
+        String[] elements = name.split("\\.");
+        for (int i = elements.length; i > 0; i--) {
+            String dir = String.join(".", Arrays.asList(elements).subList(0, i - 1));
+            String typeName = String.join(".", Arrays.asList(elements).subList(i - 1, elements.length));
+            TypeIndex.Entry e = index.find(root, dir, typeName);
+            if (e != null) {
+                return new String[] { e.file, typeName };
+            }
+        }
+        return new String[0];
+    }
+
+    private SymbolReference<ResolvedReferenceTypeDeclaration> declaration(String file, String typeName) {
+        CompilationUnit cu = units.apply(file);
+        Optional<TypeDeclaration<?>> td = cu == null ? Optional.empty() : Navigator.findType(cu, typeName);
+        if (!td.isPresent()) {
+            return unsolved();
+        }
+        return SymbolReference.solved(JavaParserFacade.get(this).getTypeDeclaration(td.get()));
+    }
+
+    private static SymbolReference<ResolvedReferenceTypeDeclaration> unsolved() {
+        return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+    }
+}
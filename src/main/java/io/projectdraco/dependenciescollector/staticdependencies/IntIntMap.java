@@ -0,0 +1,67 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.util.*;
+
+// Open addressing map from non-negative ints to ints, without boxing
+class IntIntMap {
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public IntIntMap() {
+        keys = new int[16];
+        values = new int[16];
+        Arrays.fill(keys, -1);
+    }
+
+    // the value of the key, or missing if there is none
+    public int get(int key, int missing) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; keys[i] != -1; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return missing;
+    }
+
+    public void put(int key, int value) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (; keys[i] != -1; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, -1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != -1) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,84 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+// Only loaded by Metrics when the runtime has JFR. Events are defined through jdk.jfr.EventFactory
+// by reflection, so the sources still compile for, and run on, Java 8.
+class JfrEvents {
+
+    private static final Method NEW_EVENT;
+    private static final Method IS_ENABLED;
+    private static final Method SET;
+    private static final Method COMMIT;
+    // phase, path and elapsed nanoseconds of a unit
+    private static final Object PHASE;
+    // category of a resolution failure
+    private static final Object FAILURE;
+
+    static {
+        try {
+            Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            NEW_EVENT = factory.getMethod("newEvent");
+            IS_ENABLED = event.getMethod("isEnabled");
+            SET = event.getMethod("set", int.class, Object.class);
+            COMMIT = event.getMethod("commit");
+            PHASE = create(factory,
+                Arrays.asList(annotation("Name", "io.projectdraco.staticdependencies.Phase"),
+                              annotation("Label", "Unit Phase"),
+                              annotation("Category", new String[] { "Static Dependencies" }),
+                              annotation("StackTrace", false)),
+                Arrays.asList(field(String.class, "phase", annotation("Label", "Phase")),
+                              field(String.class, "path", annotation("Label", "Path")),
+                              field(long.class, "elapsed", annotation("Label", "Elapsed"),
+                                    annotation("Timespan", "NANOSECONDS"))));
+            FAILURE = create(factory,
+                Arrays.asList(annotation("Name", "io.projectdraco.staticdependencies.ResolutionFailure"),
+                              annotation("Label", "Resolution Failure"),
+                              annotation("Category", new String[] { "Static Dependencies" })),
+                Arrays.asList(field(String.class, "category", annotation("Label", "Category"))));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static void phase(String phase, String path, long nanos) {
+        commit(PHASE, phase, path, nanos);
+    }
+
+    static void failure(String category) {
+        commit(FAILURE, category);
+    }
+
+    private static void commit(Object factory, Object... values) {
+        try {
+            Object event = NEW_EVENT.invoke(factory);
+            if ((Boolean) IS_ENABLED.invoke(event)) {
+                for (int i = 0; i < values.length; i++) {
+                    SET.invoke(event, i, values[i]);
+                }
+                COMMIT.invoke(event);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Object create(Class<?> factory, List<Object> annotations, List<Object> fields)
+            throws ReflectiveOperationException {
+        return factory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+    }
+
+    // a jdk.jfr annotation with the given value
+    private static Object annotation(String name, Object value) throws ReflectiveOperationException {
+        Class<?> type = Class.forName("jdk.jfr." + name);
+        return Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class)
+            .newInstance(type, value);
+    }
+
+    private static Object field(Class<?> type, String name, Object... annotations) throws ReflectiveOperationException {
+        return Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class)
+            .newInstance(type, name, Arrays.asList(annotations));
+    }
+}
@@ -25,6 +25,8 @@ import java.io.*;
 import java.lang.reflect.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
 import java.util.function.*;
 
@@ -32,50 +34,528 @@ import static java.util.stream.Collectors.joining;
 
 public class Main {
 
-    private static String[] mainArgs;
+    // analyses by the type solver the facades of their printers resolve against
+    private static final Map<TypeSolver, Analysis> analyses = Collections.synchronizedMap(new WeakHashMap<>());
 
     public static void main(String[] args) throws Exception {
+        String[] options = args;
         boolean inheritance = false;
         boolean fieldTypes = false;
-        if (args.length > 0 && (args[0].equals("--inheritance") || args[0].equals("--field-types"))) {
-            inheritance = args[0].equals("--inheritance");
-            fieldTypes = args[0].equals("--field-types");
-            args = Arrays.copyOfRange(args, 1, args.length);
+        int unitCache = ParsedUnitStore.UNBOUNDED;
+        int threads = 1;
+        String incremental = null;
+        String binary = null;
+        int ringBuffer = 0;
+        String typeIndex = null;
+        String classpath = null;
+        long unitTimeout = 0;
+        long stackSize = 0;
+        String quarantine = null;
+        String metrics = null;
+        int slowest = 20;
+        double progress = 0;
+        String classpathCache = ClasspathTypeSolver.DEFAULT_CACHE;
+        int workers = 1;
+        String shard = null;
+        String discovery = null;
+        int daemon = -1;
+        String historyRepository = null;
+        String historyRange = null;
+        String combined = null;
+        AggregatingSink.Level aggregate = null;
+        boolean withLines = false;
+        String graphReport = null;
+        int pipeline = 0;
+        boolean leanDiscovery = false;
+        boolean detectRoots = false;
+        long unitMemory = 0;
+        while (args.length > 0 && args[0].startsWith("--")) {
+            int consumed = 1;
+            if (args[0].equals("--inheritance")) {
+                inheritance = true;
+            } else if (args[0].equals("--field-types")) {
+                fieldTypes = true;
+            } else if (args[0].equals("--unit-cache")) {
+                // maximum number of resident ASTs shared between passes (0 keeps summaries only)
+                unitCache = Integer.parseInt(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--resolution-cache")) {
+                // maximum number of memoized resolutions per table and thread (0 disables the cache)
+                ResolutionCache.setMaxEntries(Integer.parseInt(args[1]));
+                consumed = 2;
+            } else if (args[0].equals("--incremental")) {
+                // directory keeping per unit results between runs
+                incremental = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--binary")) {
+                // write a binary edge list instead of text
+                binary = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--ring-buffer")) {
+                // hand records to a writer thread through a ring with this many slots
+                ringBuffer = Integer.parseInt(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--type-index")) {
+                // index of the types declared under the roots, rebuilt whenever a file changes
+                typeIndex = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--classpath")) {
+                // JARs and class directories resolved from their class files, without loading them
+                classpath = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--classpath-cache")) {
+                // directory keeping the class name listings of classpath elements by content hash
+                classpathCache = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--unit-timeout")) {
+                // seconds each phase of a unit may take before it is cancelled and quarantined. Visiting and
+                // resolution stop at the next node or type they reach; parsing only stops through Thread.stop,
+                // which Java 20 and later do not support, and is then left to finish in the background
+                unitTimeout = (long) (Double.parseDouble(args[1]) * 1000);
+                consumed = 2;
+            } else if (args[0].equals("--stack-size")) {
+                // stack size units are parsed and visited with, e.g. 16m; overflowing units are quarantined
+                stackSize = Watchdog.parseSize(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--quarantine")) {
+                // file listing quarantined units, skipped by later runs until their content changes
+                quarantine = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--metrics")) {
+                // JSON summary of phase timings, slowest files, resolution outcomes and failures
+                metrics = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--slowest")) {
+                // number of slowest files in the JSON summary
+                slowest = Integer.parseInt(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--progress")) {
+                // seconds between progress lines with an estimate of the remaining time
+                progress = Double.parseDouble(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--to-text")) {
+                // convert a binary edge list back to text
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+                new EdgeListReader(args[1]).writeText(out);
+                return;
+            } else if (args[0].equals("--workers")) {
+                // analyse in this many worker processes, each one printing the units of some of the directories
+                workers = Integer.parseInt(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--shard")) {
+                // file listing the only units to print, given to workers by the coordinator
+                shard = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--discovery")) {
+                // file with what the coordinator discovered, given to workers so that they do not discover again
+                discovery = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--daemon")) {
+                // keep everything warm and answer requests on this local port (0 picks one) instead of printing
+                daemon = Integer.parseInt(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--history")) {
+                // repository and rev-list range, such as v1.0..v2.0, printing the edge changes of each
+                // revision; roots are then directories within the repository
+                historyRepository = args[1];
+                historyRange = args[2];
+                consumed = 3;
+            } else if (args[0].equals("--combined")) {
+                // print static, inheritance and field type dependencies in a single pass, to
+                // static.txt, inheritance.txt and field-types.txt in this directory
+                combined = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--aggregate")) {
+                // print each distinct edge once with its count (member), or rolled up to weighted
+                // dependencies between classes (class) or packages (package), sorted
+                aggregate = AggregatingSink.Level.valueOf(args[1].toUpperCase());
+                consumed = 2;
+            } else if (args[0].equals("--with-lines")) {
+                // follow aggregated member edges with the source lines they were printed from
+                withLines = true;
+            } else if (args[0].equals("--graph-report")) {
+                // file reporting the cyclic components of the classes printed, the cycles between
+                // their packages and the fan-in, fan-out and instability of each class
+                graphReport = args[1];
+                consumed = 2;
+            } else if (args[0].equals("--pipeline")) {
+                // read files on a thread of their own ahead of parsing, through a queue with this many slots
+                pipeline = Integer.parseInt(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--lean-discovery")) {
+                // find external declarations in units parsed from their declarations and the types
+                // they create only, unless resident already
+                leanDiscovery = true;
+            } else if (args[0].equals("--unit-memory")) {
+                // ceiling on the estimated heap of resident ASTs, e.g. 512m; units are evicted by least
+                // parse time per byte and parsed again when needed, types found through a type index
+                unitMemory = Watchdog.parseSize(args[1]);
+                consumed = 2;
+            } else if (args[0].equals("--detect-roots")) {
+                // replace every argument by the source roots its package declarations imply, as is
+                // done for arguments holding a Maven or Gradle build
+                detectRoots = true;
+            } else if (args[0].equals("--threads")) {
+                threads = Integer.parseInt(args[1]);
+                consumed = 2;
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[0]);
+            }
+            args = Arrays.copyOfRange(args, consumed, args.length);
         }
-        mainArgs = args;
-        TypeSolvers typeSolvers = new TypeSolvers();
-        typeSolvers.typeSolver = new CombinedTypeSolver(new ReflectionTypeSolver());
-        typeSolvers.externalTypeSolver = new MemoryTypeSolver() {
-            public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
-                SymbolReference<ResolvedReferenceTypeDeclaration> result = super.tryToSolveType(name);
-                if (!result.isSolved()) {
-                    String[] arr = name.split("\\.");
-                    result = super.tryToSolveType(arr[arr.length-1]);
+        if (combined != null && (inheritance || fieldTypes || incremental != null || binary != null ||
+                    workers > 1 || daemon >= 0 || historyRepository != null)) {
+            throw new IllegalArgumentException("--combined prints every kind of dependency as text, in a single process");
+        }
+        if (aggregate != null && (binary != null || workers > 1 || daemon >= 0 || historyRepository != null)) {
+            throw new IllegalArgumentException("--aggregate prints text, in a single process");
+        }
+        if (graphReport != null && (workers > 1 || daemon >= 0 || historyRepository != null)) {
+            throw new IllegalArgumentException("--graph-report needs the edges of a single run, in a single process");
+        }
+        if (workers > 1 && historyRepository != null) {
+            throw new IllegalArgumentException("--history analyses its revisions in a single process");
+        }
+        if (workers > 1 && daemon >= 0) {
+            throw new IllegalArgumentException("--daemon serves requests from a single process");
+        }
+        if (withLines && aggregate == null) {
+            throw new IllegalArgumentException("--with-lines needs --aggregate");
+        }
+        options = Arrays.copyOfRange(options, 0, options.length - args.length);
+        if (historyRepository == null) {
+            // revisions may lay their sources out differently, so history roots are taken as given
+            args = SourceRoots.detect(args, detectRoots);
+        }
+        Set<String> shardPaths = shard == null ? null : new HashSet<>(Files.readAllLines(Paths.get(shard)));
+        if (progress > 0) {
+            Metrics.startProgress((long) (progress * 1000));
+        }
+        ParsedUnitStore units = new ParsedUnitStore(unitCache);
+        units.setPipeline(pipeline);
+        units.setLeanDiscovery(leanDiscovery);
+        units.setMaxBytes(unitMemory);
+        if (unitMemory > 0 && typeIndex == null) {
+            File index = File.createTempFile("static-dependencies", ".types.idx");
+            index.delete();
+            index.deleteOnExit();
+            typeIndex = index.getPath();
+        }
+        Watchdog watchdog = null;
+        if (unitTimeout > 0 || stackSize > 0 || quarantine != null) {
+            Watchdog w = new Watchdog(unitTimeout, stackSize, quarantine);
+            units.setParser((path, content) -> w.call(path, "parse", () -> parse(path, content), null));
+            watchdog = w;
+        }
+        final Watchdog unitWatchdog = watchdog;
+        ForkJoinPool pool = null;
+        if (threads > 1) {
+            synchronizeSolverRegistries();
+            pool = new ForkJoinPool(threads);
+        }
+        ClasspathTypeSolver.Index classpathIndex =
+            classpath == null ? null : new ClasspathTypeSolver.Index(classpath, classpathCache);
+        if (workers > 1) {
+            DependencySink output = binary == null ? new TextDependencySink(System.out, 1 << 16) : new EdgeListWriter(binary);
+            new ShardCoordinator(workers, options, args).run(typeIndex, units, classpathIndex, pool, watchdog, output);
+            output.close();
+            Metrics.stopProgress();
+            return;
+        }
+        if (historyRepository != null) {
+            DependencySink output = new TextDependencySink(System.out, 1 << 16);
+            new GitHistory(historyRepository, historyRange, args.length == 0 ? new String[] { "." } : args)
+                .run(printer(inheritance, fieldTypes), inheritance ? "inheritance" : fieldTypes ? "field-types" : "static",
+                     classpathIndex, units, watchdog, output);
+            output.close();
+            Metrics.stopProgress();
+            units.report(System.err);
+            return;
+        }
+        TypeSolvers typeSolvers = discovery == null ? discover(args, units, classpathIndex, typeIndex, pool, watchdog)
+            : discovered(args, units, classpathIndex, typeIndex, discovery);
+        Function<DependencySink, VoidVisitor<JavaParserFacade>> printer = printer(inheritance, fieldTypes, combined != null);
+        if (daemon >= 0) {
+            new Daemon(args, units, classpathIndex, typeIndex, printer, watchdog, typeSolvers).serve(daemon);
+            return;
+        }
+        IncrementalStore store = null;
+        if (incremental != null) {
+            store = new IncrementalStore(incremental, inheritance ? "inheritance" : fieldTypes ? "field-types" : "static");
+            List<String> paths = new ArrayList<>();
+            for (String s : args) {
+                paths.addAll(units.paths(s));
+            }
+            store.begin(paths, typeSolvers.externalTypeSolver.fingerprint());
+        }
+        final IncrementalStore results = store;
+        final boolean ownTypeSolvers = pool != null;
+        DependencySink output;
+        // edges of all printers, analysed once printed
+        DependencyGraph graph = graphReport == null ? null : new DependencyGraph(typeSolvers.analysis::fileStart);
+        if (combined != null) {
+            Files.createDirectories(Paths.get(combined));
+            DependencySink[] streams = new DependencySink[3];
+            String[] names = { "static.txt", "inheritance.txt", "field-types.txt" };
+            for (int i = 0; i < streams.length; i++) {
+                streams[i] = new TextDependencySink(new FileOutputStream(Paths.get(combined, names[i]).toFile()), 1 << 16);
+                if (ringBuffer > 0) {
+                    streams[i] = new RingBufferSink(streams[i], ringBuffer);
+                }
+                if (aggregate != null) {
+                    streams[i] = new AggregatingSink(streams[i], aggregate, withLines, typeSolvers.analysis::fileStart);
+                }
+                if (graph != null) {
+                    streams[i] = graph.tee(streams[i]);
                 }
-                return result;
             }
+            output = new CombinedSink(streams[0], streams[1], streams[2]);
+        } else {
+            output = binary == null ? new TextDependencySink(System.out, 1 << 16) : new EdgeListWriter(binary);
+            if (ringBuffer > 0) {
+                output = new RingBufferSink(output, ringBuffer);
+            }
+            if (aggregate != null) {
+                output = new AggregatingSink(output, aggregate, withLines, typeSolvers.analysis::fileStart);
+            }
+            if (graph != null) {
+                output = graph.tee(output);
+            }
+        }
+        final DependencySink sink = output;
+        // every worker thread resolves against its own copy of the type solvers, and so does a thread
+        // whose unit was stopped by the watchdog, which may have left the ones it used half updated
+        ThreadLocal<TypeSolvers> threadTypeSolvers =
+            ThreadLocal.withInitial(() -> ownTypeSolvers ? typeSolvers.copy() : typeSolvers);
+        Supplier<JavaParserFacade> facade = () -> JavaParserFacade.get(threadTypeSolvers.get().typeSolver);
+        Runnable reset = () -> {
+            JavaParserFacade.clearInstances();
+            threadTypeSolvers.set(typeSolvers.copy());
         };
+        // workers print the units of their shard only, having discovered all of them
+        Function<String, List<String>> analysed = s -> shardPaths == null ? units.paths(s)
+            : units.paths(s).stream().filter(shardPaths::contains).collect(Collectors.toList());
+        int total = 0;
+        for (String s : args) {
+            total += analysed.apply(s).size();
+        }
+        Metrics.progress("analysis", total);
+        Consumer<String> analyse = path -> {
+            Metrics.done();
+            if (units.release()) {
+                // the facades of other threads stay alive until their units are printed
+                JavaParserFacade.clearInstances();
+            }
+            String lines = results == null ? null : results.freshLines(path);
+            if (lines != null) {
+                sink.lines(lines);
+                return;
+            }
+            CompilationUnit cu = units.get(path);
+            if (results == null && unitWatchdog == null && shardPaths == null) {
+                if (cu != null) {
+                    print(cu, printer.apply(sink), facade.get());
+                }
+                return;
+            }
+            DependencySink buffer = sink instanceof CombinedSink ? CombinedSink.buffers() : new DependencySink.Buffer();
+            Set<String> dependencies = Collections.emptySet();
+            if (cu != null) {
+                // the facade belongs to this thread, not to the one the watchdog visits on
+                JavaParserFacade jp = facade.get();
+                RoutingTypeSolver solver = (RoutingTypeSolver) jp.getTypeSolver();
+                if (results != null) {
+                    solver.startRecording();
+                }
+                Runnable visit = () -> print(cu, printer.apply(buffer), jp);
+                if (unitWatchdog == null) {
+                    visit.run();
+                } else if (!unitWatchdog.run(path, "print", visit, reset)) {
+                    solver.stopRecording();
+                    return;
+                }
+                dependencies = solver.stopRecording();
+            }
+            if (buffer instanceof CombinedSink) {
+                ((CombinedSink) buffer).copyTo((CombinedSink) sink);
+                return;
+            }
+            if (shardPaths != null) {
+                // the coordinator puts the blocks of every worker back in the order of the walk
+                sink.lines(ShardCoordinator.block(path, buffer.toString()));
+                return;
+            }
+            if (results == null) {
+                ((DependencySink.Buffer) buffer).copyTo(sink);
+                return;
+            }
+            lines = buffer.toString();
+            results.record(path, lines, dependencies);
+            sink.lines(lines);
+        };
+        for (String s : args) {
+            if (pool == null) {
+                analysed.apply(s).forEach(analyse);
+                continue;
+            }
+            ForkJoinTask<?> task = pool.submit(() -> analysed.apply(s).parallelStream().forEach(analyse));
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        sink.close();
+        if (graph != null) {
+            graph.report(graphReport);
+        }
+        if (store != null) {
+            store.save();
+            store.report(System.err);
+        }
+        if (watchdog != null) {
+            watchdog.save();
+            watchdog.report(System.err);
+        }
+        Metrics.stopProgress();
+        units.report(System.err);
+        ResolutionCache.report(System.err);
+        RoutingTypeSolver.report(System.err);
+        Metrics.report(System.err);
+        if (metrics != null) {
+            Metrics.writeJson(metrics, slowest);
+        }
+    }
 
-        Function<String, Stream<CompilationUnit>> ss = (s) -> walk(Paths.get(s))
-            .filter(p -> p.toString().endsWith(".java"))
-            .map(p -> parse(p.toAbsolutePath().toString()));
+    private static TypeSolvers typeSolvers(String[] roots, ParsedUnitStore units, ClasspathTypeSolver.Index classpath) {
+        TypeSolvers typeSolvers = new TypeSolvers();
+        typeSolvers.analysis = new Analysis(roots);
+        // where the file name of every unit path starts is known before edges are rolled up
+        for (String s : roots) {
+            units.paths(s).forEach(typeSolvers.analysis::unitPath);
+        }
+        typeSolvers.classpath = classpath;
+        typeSolvers.typeSolver = typeSolvers.combinedTypeSolver();
+        typeSolvers.externalTypeSolver = new ExternalTypeSolver();
+        typeSolvers.units = units::get;
+        typeSolvers.paths = units::paths;
+        typeSolvers.unitsEvicted = units.isMemoryBounded();
+        return typeSolvers;
+    }
 
-        for (String s : args) {
-            File f = new File(s);
-            JavaParserTypeSolver jpts = new JavaParserTypeSolver(f);
+    // the external declarations and source names discovery found, in the order it found them
+    static void writeDiscovery(TypeSolvers typeSolvers, String file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            List<Map.Entry<String, ExternalResolvedReferenceTypeDeclaration>> declarations =
+                typeSolvers.externalTypeSolver.declarations;
+            out.writeInt(declarations.size());
+            for (Map.Entry<String, ExternalResolvedReferenceTypeDeclaration> e : declarations) {
+                out.writeUTF(e.getKey());
+                e.getValue().write(out);
+            }
+            typeSolvers.analysis.sourceNames.write(out);
+        }
+    }
+
+    // the type solvers of a discovery written by another process, resolving through the type index it used
+    static TypeSolvers discovered(String[] roots, ParsedUnitStore units, ClasspathTypeSolver.Index classpath,
+            String typeIndex, String file) throws IOException {
+        TypeSolvers typeSolvers = typeSolvers(roots, units, classpath);
+        List<String> paths = new ArrayList<>();
+        for (String s : roots) {
+            paths.addAll(units.paths(s));
+        }
+        typeSolvers.typeIndex = typeIndex == null ? null : TypeIndex.open(typeIndex, roots, paths);
+        if (typeSolvers.typeIndex == null) {
+            throw new IllegalArgumentException("--discovery needs the current type index of its roots");
+        }
+        for (int i = 0; i < roots.length; i++) {
+            typeSolvers.addRootSolver(roots, i);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            for (int n = in.readInt(); n > 0; n--) {
+                String name = in.readUTF();
+                typeSolvers.externalTypeSolver.addDeclaration(name,
+                        ExternalResolvedReferenceTypeDeclaration.read(in, typeSolvers.typeSolver));
+            }
+            typeSolvers.analysis.sourceNames = SourceNames.read(in);
+        }
+        typeSolvers.typeSolver.add(typeSolvers.externalTypeSolver, "external", null);
+        return typeSolvers;
+    }
+
+    // sets up the type solvers of the roots and collects the declarations of the types they use
+    // but do not declare
+    static TypeSolvers discover(String[] roots, ParsedUnitStore units, ClasspathTypeSolver.Index classpath,
+            String typeIndex, ForkJoinPool pool, Watchdog watchdog) throws Exception {
+        SourceNames names = new SourceNames();
+        TypeSolvers typeSolvers = typeSolvers(roots, units, classpath);
+        if (typeIndex != null) {
+            List<String> paths = new ArrayList<>();
+            for (String s : roots) {
+                paths.addAll(units.paths(s));
+            }
+            typeSolvers.typeIndex = TypeIndex.open(typeIndex, roots, paths);
+            if (typeSolvers.typeIndex != null) {
+                System.err.println("Type index loaded from " + typeIndex);
+            } else if (units.isMemoryBounded()) {
+                // a JavaParserTypeSolver would keep every unit it parses
+                TypeIndex.write(typeIndex, roots, units::paths, units::get);
+                System.err.println("Type index written to " + typeIndex);
+                typeSolvers.typeIndex = TypeIndex.open(typeIndex, roots, paths);
+            }
+        }
+        int total = 0;
+        for (String s : roots) {
+            total += units.paths(s).size();
+        }
+        Metrics.progress("discovery", total);
+        // set if the watchdog stopped a unit, which may have left the type solvers half updated
+        AtomicBoolean stopped = new AtomicBoolean();
+        for (int i = 0; i < roots.length; i++) {
+            String s = roots[i];
+            TypeSolver jpts = typeSolvers.addRootSolver(roots, i);
             JavaSymbolSolver jss = new JavaSymbolSolver(jpts);
-            typeSolvers.typeSolver.add(jpts);
+            if (pool != null) {
+                units.prefetch(s, pool);
+            }
             // collect external superclasses and interfaces
             VoidVisitor<TypeSolvers> externalDeclarationsVisitor = new ExternalDeclarationVisitor();
-            ss.apply(s).forEach(cu -> {
-                if (cu == null) {
+            units.declarations(s).forEach(cu -> {
+                Metrics.done();
+                if (units.release()) {
+                    JavaParserFacade.clearInstances();
+                }
+                if (cu == null || stopped.get()) {
                     return;
                 }
                 // jss.inject(cu);
-                try {
-                    externalDeclarationsVisitor.visit(cu, typeSolvers);
-                } catch (StackOverflowError e) {
+                String path = cu.getStorage().get().getPath().toString();
+                Runnable visit = () -> {
+                    long start = System.nanoTime();
+                    try {
+                        externalDeclarationsVisitor.visit(cu, typeSolvers);
+                    } catch (StackOverflowError e) {
+                        Watchdog.overflowed();
+                    } finally {
+                        Metrics.time(Metrics.Phase.DISCOVERY, path, start);
+                    }
+                };
+                if (watchdog == null) {
+                    visit.run();
+                } else if (!watchdog.run(path, "discovery", visit, () -> stopped.set(true))) {
+                    return;
                 }
+                names.add(cu);
                 if (cu.getImports() != null) {
                     for (ImportDeclaration imp : cu.getImports()) {
                         if (imp.isStatic() && !imp.isAsterisk()) {
@@ -88,38 +568,79 @@ public class Main {
                 }
             });
         }
-        typeSolvers.typeSolver.add(typeSolvers.externalTypeSolver);
-        for (String s : args) {
-            VoidVisitor<JavaParserFacade> visitor;
+        if (stopped.get()) {
+            System.err.println("Discovering again, without the units stopped");
+            JavaParserFacade.clearInstances();
+            return discover(roots, units, classpath, typeIndex, pool, watchdog);
+        }
+        typeSolvers.typeSolver.add(typeSolvers.externalTypeSolver, "external", null);
+        typeSolvers.analysis.sourceNames = names;
+        if (typeIndex != null && typeSolvers.typeIndex == null) {
+            TypeIndex.write(typeIndex, roots, units::paths, units::get);
+            System.err.println("Type index written to " + typeIndex);
+        }
+        return typeSolvers;
+    }
+
+    static Function<DependencySink, VoidVisitor<JavaParserFacade>> printer(boolean inheritance, boolean fieldTypes) {
+        return printer(inheritance, fieldTypes, false);
+    }
+
+    // combined printers need a CombinedSink
+    static Function<DependencySink, VoidVisitor<JavaParserFacade>> printer(
+            boolean inheritance, boolean fieldTypes, boolean combined) {
+        return (out) -> {
             // run printer visitor
-            if (inheritance) {
-                visitor = new InheritancePrinter();
+            if (combined) {
+                return new CombinedPrinter((CombinedSink) out);
+            } else if (inheritance) {
+                return new InheritancePrinter(out);
             } else if (fieldTypes) {
-                visitor = new FieldTypesPrinter();
+                return new FieldTypesPrinter(out);
             } else {
-                visitor = new StaticDependencyPrinter();
+                return new StaticDependencyPrinter(out);
             }
-            ss.apply(s).forEach(cu -> {
-                if (cu == null) {
-                    return;
-                }
-                try {
-                    visitor.visit(cu, JavaParserFacade.get(typeSolvers.typeSolver));
-                } catch (StackOverflowError e) {
-                } catch (RuntimeException e) {
-                    if (e.getMessage() != null &&
-                            e.getMessage().contains("parser.updateExpressionExtractor")) {
-                        return;
-                    }
-                    throw e;
-                } catch (Exception e) {
-                    throw new RuntimeException(cu.getStorage().get().getPath().toString(), e);
-                }
-            });
+        };
+    }
+
+    static void print(CompilationUnit cu, VoidVisitor<JavaParserFacade> visitor, JavaParserFacade jp) {
+        long start = System.nanoTime();
+        try {
+            visitor.visit(cu, jp);
+        } catch (StackOverflowError e) {
+            Watchdog.overflowed();
+        } catch (RuntimeException e) {
+            if (e.getMessage() != null &&
+                    e.getMessage().contains("parser.updateExpressionExtractor")) {
+                Metrics.failure("parser.updateExpressionExtractor");
+                return;
+            }
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(cu.getStorage().get().getPath().toString(), e);
+        } finally {
+            Metrics.time(Metrics.Phase.RESOLUTION, cu.getStorage().map(s -> s.getPath().toString()).orElse(null), start);
         }
     }
 
-    private static Stream<Path> walk(Path p) {
+    // JavaParserFacade and TypeInferenceCache keep unsynchronized static registries keyed by type solver.
+    // Each worker thread owns its type solvers, so guarding the registries themselves is enough.
+    private static void synchronizeSolverRegistries() throws ReflectiveOperationException {
+        synchronizeStaticMap(JavaParserFacade.class, "instances");
+        synchronizeStaticMap(com.github.javaparser.symbolsolver.resolution.typeinference.TypeInferenceCache.class,
+                "typeForLambdaParameters");
+        synchronizeStaticMap(com.github.javaparser.symbolsolver.resolution.typeinference.TypeInferenceCache.class,
+                "inferenceVariables");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void synchronizeStaticMap(Class<?> owner, String name) throws ReflectiveOperationException {
+        java.lang.reflect.Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, Collections.synchronizedMap((Map<Object, Object>) field.get(null)));
+    }
+
+    static Stream<Path> walk(Path p) {
         try {
             return Files.walk(p);
         } catch (Exception e) {
@@ -127,10 +648,15 @@ public class Main {
         }
     }
 
-    private static CompilationUnit parse(String path) {
+    // content read from the path already, or null
+    static CompilationUnit parse(String path, String content) {
         try {
+            if (content != null) {
+                return JavaParser.parse(content).setStorage(Paths.get(path));
+            }
             return JavaParser.parse(new File(path));
         } catch (StackOverflowError e) {
+            Watchdog.overflowed();
             return null;
         } catch (RuntimeException e) {
             return null;
@@ -139,40 +665,176 @@ public class Main {
         }
     }
 
-    private static class TypeSolvers {
-        public CombinedTypeSolver typeSolver;
-        public MemoryTypeSolver externalTypeSolver;
+    static class TypeSolvers {
+        public RoutingTypeSolver typeSolver;
+        public ExternalTypeSolver externalTypeSolver;
+        public TypeIndex typeIndex;
+        public Function<String, CompilationUnit> units;
+        public Function<String, List<String>> paths;
+        public ClasspathTypeSolver.Index classpath;
+        // units may be evicted and parsed again, so declarations must not be kept
+        public boolean unitsEvicted;
+        public Analysis analysis;
+
+        // library types come before the roots, external declarations are added after them
+        public RoutingTypeSolver combinedTypeSolver() {
+            RoutingTypeSolver combined = new RoutingTypeSolver();
+            analyses.put(combined, analysis);
+            combined.addJdk(new ReflectionTypeSolver());
+            if (classpath != null) {
+                combined.add(new ClasspathTypeSolver(classpath), "classpath", classpath::contains);
+            }
+            return combined;
+        }
+
+        // adds the solver of root i, asked for the names of the units under it only
+        public TypeSolver addRootSolver(String[] roots, int i) {
+            TypeSolver solver = rootSolver(roots, i);
+            typeSolver.addRoot(solver, roots[i], paths.apply(roots[i]));
+            return solver;
+        }
+
+        public TypeSolver rootSolver(String[] roots, int i) {
+            if (typeIndex != null) {
+                return new IndexedTypeSolver(typeIndex, i, units, !unitsEvicted);
+            }
+            return new JavaParserTypeSolver(new File(roots[i]));
+        }
+
+        // changes whenever discovery adds different external declarations
+        public String externalsFingerprint() {
+            return externalTypeSolver.fingerprint();
+        }
+
+        public TypeSolvers copy() {
+            String[] roots = analysis.roots;
+            TypeSolvers copy = new TypeSolvers();
+            copy.analysis = analysis;
+            copy.typeIndex = typeIndex;
+            copy.units = units;
+            copy.unitsEvicted = unitsEvicted;
+            copy.classpath = classpath;
+            copy.typeSolver = copy.combinedTypeSolver();
+            copy.paths = paths;
+            for (int i = 0; i < roots.length; i++) {
+                copy.addRootSolver(roots, i);
+            }
+            copy.externalTypeSolver = new ExternalTypeSolver();
+            for (Map.Entry<String, ExternalResolvedReferenceTypeDeclaration> e : externalTypeSolver.declarations) {
+                copy.externalTypeSolver.addDeclaration(e.getKey(), e.getValue().copy(copy.typeSolver));
+            }
+            copy.typeSolver.add(copy.externalTypeSolver, "external", null);
+            return copy;
+        }
+    }
+
+    private static class ExternalTypeSolver extends MemoryTypeSolver {
+        // declarations in the order they were added, so that copies end up in the same state
+        private final List<Map.Entry<String, ExternalResolvedReferenceTypeDeclaration>> declarations = new ArrayList<>();
+
+        public void addDeclaration(String name, ExternalResolvedReferenceTypeDeclaration declaration) {
+            declarations.add(new AbstractMap.SimpleImmutableEntry<>(name, declaration));
+            super.addDeclaration(name, declaration);
+        }
+
+        public String fingerprint() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, ExternalResolvedReferenceTypeDeclaration> e : declarations) {
+                sb.append(e.getKey()).append(' ').append(e.getValue().written).append('\n');
+            }
+            return IncrementalStore.hash(sb.toString().getBytes());
+        }
+
+        public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+            SymbolReference<ResolvedReferenceTypeDeclaration> result = super.tryToSolveType(name);
+            if (!result.isSolved()) {
+                String[] arr = name.split("\\.");
+                result = super.tryToSolveType(arr[arr.length-1]);
+            }
+            return result;
+        }
     }
 
     private static class ExternalResolvedReferenceTypeDeclaration extends ReflectionClassDeclaration {
         private String name;
-        private ClassOrInterfaceType coit;
-        private Node coid;
+        // the type as it was used, and its type arguments, as written
+        private String written;
+        private List<String> typeArguments;
+        // name of the class it was used in
+        private String className;
         private TypeSolver typeSolver;
-        public ExternalResolvedReferenceTypeDeclaration(String name, ClassOrInterfaceType coit, Node coid, TypeSolver typeSolver) {
+        private List<ResolvedTypeParameterDeclaration> typeParameters;
+        public ExternalResolvedReferenceTypeDeclaration(String name, ClassOrInterfaceType coit, ClassOrInterfaceDeclaration coid,
+                TypeSolver typeSolver) {
+            this(name, String.valueOf(coit), coit == null || !coit.getTypeArguments().isPresent() ? null :
+                    coit.getTypeArguments().get().stream().map(Object::toString).collect(Collectors.toList()),
+                 coid == null ? null : coid.getNameAsString(), typeSolver);
+        }
+        private ExternalResolvedReferenceTypeDeclaration(String name, String written, List<String> typeArguments,
+                String className, TypeSolver typeSolver) {
             super(Object.class, typeSolver);
             this.name = name;
-            this.coit = coit;
-            this.coid = coid;
+            this.written = written;
+            this.typeArguments = typeArguments;
+            this.className = className;
             this.typeSolver = typeSolver;
+            this.typeParameters = typeParameters();
         }
         public ExternalResolvedReferenceTypeDeclaration(Class<?> clazz, TypeSolver typeSolver) {
             super(clazz, typeSolver);
+            this.typeParameters = Collections.emptyList();
+        }
+        public ExternalResolvedReferenceTypeDeclaration copy(TypeSolver typeSolver) {
+            return new ExternalResolvedReferenceTypeDeclaration(name, written, typeArguments, className, typeSolver);
+        }
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeUTF(written);
+            out.writeInt(typeArguments == null ? -1 : typeArguments.size());
+            if (typeArguments != null) {
+                for (String t : typeArguments) {
+                    out.writeUTF(t);
+                }
+            }
+            out.writeBoolean(className != null);
+            if (className != null) {
+                out.writeUTF(className);
+            }
+        }
+        static ExternalResolvedReferenceTypeDeclaration read(DataInputStream in, TypeSolver typeSolver) throws IOException {
+            String name = in.readUTF();
+            String written = in.readUTF();
+            List<String> typeArguments = null;
+            int n = in.readInt();
+            if (n >= 0) {
+                typeArguments = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    typeArguments.add(in.readUTF());
+                }
+            }
+            String className = in.readBoolean() ? in.readUTF() : null;
+            return new ExternalResolvedReferenceTypeDeclaration(name, written, typeArguments, className, typeSolver);
         }
         public String getQualifiedName() {
             return name;
         }
         public List<ResolvedTypeParameterDeclaration> getTypeParameters() {
-            if (coit != null && coit.getTypeArguments().isPresent()) {
-                return coit.getTypeArguments().get().stream()
-                    .map(t -> {
-                        TypeParameter tp = new TypeParameter(t.toString());
-                        tp.setParentNode(coid);
-                        return new JavaParserTypeParameter(tp, typeSolver);
-                    })
-                    .collect(Collectors.toList());
+            return typeParameters;
+        }
+        // built once, with a stub of the class as parent, so that no unit gains nodes nor is kept alive
+        private List<ResolvedTypeParameterDeclaration> typeParameters() {
+            if (typeArguments == null) {
+                return Collections.emptyList();
             }
-            return Collections.emptyList();
+            ClassOrInterfaceDeclaration stub = new ClassOrInterfaceDeclaration(
+                    EnumSet.noneOf(com.github.javaparser.ast.Modifier.class), false, className);
+            return Collections.unmodifiableList(typeArguments.stream()
+                .map(t -> {
+                    TypeParameter tp = new TypeParameter(t);
+                    tp.setParentNode(stub);
+                    return new JavaParserTypeParameter(tp, typeSolver);
+                })
+                .collect(Collectors.toList()));
         }
     }
 
@@ -180,6 +842,7 @@ public class Main {
 
         @Override
         public void visit(ClassOrInterfaceDeclaration coid, TypeSolvers ts) {
+            Watchdog.checkCancelled();
             super.visit(coid, ts);
             if (coid.isInterface() || coid.isLocalClassDeclaration()) {
                 return;
@@ -194,6 +857,7 @@ public class Main {
 
         @Override
         public void visit(MethodDeclaration md, TypeSolvers ts) {
+            Watchdog.checkCancelled();
             super.visit(md, ts);
             if (md.getType() instanceof ClassOrInterfaceType) {
                 addUnsolvedClassesOrInterfaces((ClassOrInterfaceType) md.getType(), new ClassOrInterfaceDeclaration(), ts);
@@ -207,6 +871,7 @@ public class Main {
 
         @Override
         public void visit(FieldDeclaration fd, TypeSolvers ts) {
+            Watchdog.checkCancelled();
             super.visit(fd, ts);
             for (VariableDeclarator vd : fd.getVariables()) {
                 if (vd.getType() instanceof ClassOrInterfaceType) {
@@ -217,6 +882,7 @@ public class Main {
 
         @Override
         public void visit(ObjectCreationExpr oce, TypeSolvers ts) {
+            Watchdog.checkCancelled();
             super.visit(oce, ts);
             if (oce.getType() instanceof ClassOrInterfaceType) {
                 addUnsolvedClassesOrInterfaces((ClassOrInterfaceType) oce.getType(), new ClassOrInterfaceDeclaration(), ts);
@@ -234,13 +900,11 @@ public class Main {
                     typeSolvers.externalTypeSolver.tryToSolveType(name);
                 int count = coit.getTypeArguments().isPresent() ? coit.getTypeArguments().get().size() : 0;
                 if (!solved.isSolved() || solved.getCorrespondingDeclaration().getTypeParameters().size() < count) {
-                    typeSolvers.externalTypeSolver.addDeclaration(
-                            name, new ExternalResolvedReferenceTypeDeclaration(name, coit, coid, typeSolvers.typeSolver));
+                    typeSolvers.externalTypeSolver.addDeclaration(name, new ExternalResolvedReferenceTypeDeclaration(name, coit, coid, typeSolvers.typeSolver));
                 }
                 if (name.contains(".")) {
                     String[] arr = name.split("\\.");
-                    typeSolvers.externalTypeSolver.addDeclaration(
-                            arr[arr.length-1],
+                    typeSolvers.externalTypeSolver.addDeclaration(arr[arr.length-1],
                             new ExternalResolvedReferenceTypeDeclaration(arr[arr.length-1], coit, coid, typeSolvers.typeSolver));
                 }
             }
@@ -256,20 +920,33 @@ public class Main {
 
     private static class StaticDependencyPrinter extends VoidVisitorAdapter<JavaParserFacade> {
 
+        private final DependencySink out;
+        private final StringBuilder target = new StringBuilder();
+
+        public StaticDependencyPrinter(DependencySink out) {
+            this.out = out;
+        }
+
         @Override
         public void visit(MethodCallExpr mc, JavaParserFacade jp) {
+            Watchdog.checkCancelled();
             super.visit(mc, jp);
+            if (ResolutionCache.get(jp).isLibraryScope(mc.getScope(), analysis(jp).sourceNames, jp)) {
+                Metrics.expression(Metrics.Expression.METHOD_CALL, Metrics.Outcome.SKIPPED);
+                return;
+            }
             // Check if the receiver type is on sources
             TypeSolver typeSolver = jp.getTypeSolver();
             Context ctx = JavaParserFactory.getContext(mc, typeSolver);
             Collection<ResolvedReferenceTypeDeclaration> rts = findTypeDeclarations(mc, mc.getScope(), ctx, jp);
             if (rts.isEmpty()) {
+                Metrics.expression(Metrics.Expression.METHOD_CALL, Metrics.Outcome.UNRESOLVED);
                 return;
             }
             //
             SymbolReference<ResolvedMethodDeclaration> ref = null;
             try {
-                ref = jp.solve(mc);
+                ref = ResolutionCache.get(jp).method(mc, () -> jp.solve(mc));
             } catch (Exception e) {
                 // jp = JavaParserFacade.get(new ReflectionTypeSolver());
                 // ref = jp.solve(mc);
@@ -279,86 +956,145 @@ public class Main {
                     msg = e.getCause().toString();
                 }
                 System.err.println/*throw new RuntimeException*/("Cannot solve method call " + mc + " " + msg + " " + mc.findCompilationUnit().get().getStorage().get().getPath()/*, e*/);
+                Metrics.expression(Metrics.Expression.METHOD_CALL, Metrics.Outcome.FAILED);
                 return;
             }
-            if (ref == null || !ref.isSolved()) return;
-            String cupath = getCompilationUnitPath(findCompilationUnit(mc, jp));
+            if (ref == null || !ref.isSolved()) {
+                Metrics.expression(Metrics.Expression.METHOD_CALL, Metrics.Outcome.UNRESOLVED);
+                return;
+            }
+            Metrics.expression(Metrics.Expression.METHOD_CALL, Metrics.Outcome.RESOLVED);
+            String cupath = getCompilationUnitPath(findCompilationUnit(mc, jp), jp);
             if (cupath.length() == 0) return;
-            BodyDeclaration bd = mc.findParent(BodyDeclaration.class).get();
-            String fqs = null;
+            BodyDeclaration<?> bd = mc.findParent(BodyDeclaration.class).get();
+            int fqs;
             try {
-                fqs = fullQualifiedSignature(bd, jp);
+                fqs = signature(bd, jp);
             } catch (Exception e) {
                 System.err.println("Cannot solve method call " + mc + " " + e.getMessage() + " " + mc.findCompilationUnit().get().getStorage().get().getPath());
                 return;
             }
-            System.out.print(fqs + " ");
             ResolvedMethodDeclaration rmd = ref.getCorrespondingDeclaration();
-            System.out.print(cupath);
-            String methodType = "/[MT]/";
-            if (rmd.declaringType().getName().toString().equals(rmd.getName().toString())) {
-                methodType = "/[CS]/";
-            }
-            System.out.println(rmd.declaringType().getName() + methodType + describeParameters(rmd));
+            target.setLength(0);
+            target.append(cupath).append(describeMember(rmd, jp));
+            Symbols symbols = analysis(jp).symbols;
+            out.edge(symbols, fqs, ' ', symbols.id(target), line(mc));
         }
 
         @Override
         public void visit(FieldAccessExpr fa, JavaParserFacade jp) {
+            Watchdog.checkCancelled();
             super.visit(fa, jp);
+            if (ResolutionCache.get(jp).isLibraryScope(Optional.of(fa.getScope()), analysis(jp).sourceNames, jp)) {
+                Metrics.expression(Metrics.Expression.FIELD_ACCESS, Metrics.Outcome.SKIPPED);
+                return;
+            }
             SymbolReference<ResolvedFieldDeclaration> ref = solve(fa, jp);
-            if (!ref.isSolved()) return;
-            String cupath = getCompilationUnitPath(findCompilationUnit(fa, jp));
+            if (!ref.isSolved()) {
+                Metrics.expression(Metrics.Expression.FIELD_ACCESS, Metrics.Outcome.UNRESOLVED);
+                return;
+            }
+            Metrics.expression(Metrics.Expression.FIELD_ACCESS, Metrics.Outcome.RESOLVED);
+            String cupath = getCompilationUnitPath(findCompilationUnit(fa, jp), jp);
             if (cupath.length() == 0) return;
-            BodyDeclaration bd = fa.findParent(BodyDeclaration.class).get();
+            BodyDeclaration<?> bd = fa.findParent(BodyDeclaration.class).get();
             ResolvedFieldDeclaration rfd = ref.getCorrespondingDeclaration();
             ResolvedTypeDeclaration dt =  null;
-            String fqs = null;
+            int fqs;
             try {
                 dt = rfd.declaringType();
-                fqs = fullQualifiedSignature(bd, jp);
+                fqs = signature(bd, jp);
             } catch (Exception e) {
                 System.err.println("Cannot solve field access " + fa);
                 return;
             }
-            System.out.print(fqs + " ");
-            System.out.print(cupath);
-            System.out.println(dt.getName() + "/[FE]/" + fa.getName().getId());
+            target.setLength(0);
+            target.append(cupath).append(declaringTypeName(memberNode(rfd), dt, jp)).append("/[FE]/").append(fa.getName().getId());
+            Symbols symbols = analysis(jp).symbols;
+            out.edge(symbols, fqs, ' ', symbols.id(target), line(fa));
         }
 
         @Override
         public void visit(NameExpr ne, JavaParserFacade jp) {
+            Watchdog.checkCancelled();
             super.visit(ne, jp);
-            SymbolReference<? extends ResolvedValueDeclaration> ref = null;
-            try {
-                ref = jp.solve(ne);
-            } catch (Exception e) {
+            SymbolReference<? extends ResolvedValueDeclaration> ref = ResolutionCache.get(jp).value(ne, () -> {
+                try {
+                    return jp.solve(ne);
+                } catch (Exception e) {
+                    return null;
+                }
+            });
+            if (ref == null) {
                 // TODO: solve expressions inside inner classes
                 System.err.println("Cannot solve name expression " + ne);
+                Metrics.expression(Metrics.Expression.NAME, Metrics.Outcome.FAILED);
                 return;
             }
+            Metrics.expression(Metrics.Expression.NAME,
+                    ref.isSolved() ? Metrics.Outcome.RESOLVED : Metrics.Outcome.UNRESOLVED);
             if (!ref.isSolved() || !ref.getCorrespondingDeclaration().isField()) { return; }
-            BodyDeclaration bd = ne.findParent(BodyDeclaration.class).get();
+            BodyDeclaration<?> bd = ne.findParent(BodyDeclaration.class).get();
             ResolvedFieldDeclaration rfd = ref.getCorrespondingDeclaration().asField();
             ResolvedTypeDeclaration dt = null;
-            String fqs = null;
+            int fqs;
             try {
                 dt = rfd.declaringType();
-                fqs = fullQualifiedSignature(bd, jp);
+                fqs = signature(bd, jp);
             } catch (Exception e) {
                 // TODO: verify why the ne is empty
                 System.err.println("Empty name expression " + ne);
                 return;
             }
-            System.out.print(fqs + " ");
-            System.out.print(getCompilationUnitPath(ne.findCompilationUnit()));
-            System.out.println(dt.getName() + "/[FE]/" + ne.getName().getId());
+            target.setLength(0);
+            target.append(getCompilationUnitPath(ne.findCompilationUnit(), jp)).append(declaringTypeName(memberNode(rfd), dt, jp))
+                .append("/[FE]/").append(ne.getName().getId());
+            Symbols symbols = analysis(jp).symbols;
+            out.edge(symbols, fqs, ' ', symbols.id(target), line(ne));
+        }
+    }
+
+    // Static dependencies, plus the inheritance and field types the other printers would print in
+    // the same pass: they visit neither classes within classes nor fields within fields
+    private static class CombinedPrinter extends StaticDependencyPrinter {
+
+        private final InheritancePrinter inheritance;
+        private final FieldTypesPrinter fieldTypes;
+
+        public CombinedPrinter(CombinedSink out) {
+            super(out.statics);
+            inheritance = new InheritancePrinter(out.inheritance);
+            fieldTypes = new FieldTypesPrinter(out.fieldTypes);
+        }
+
+        @Override
+        public void visit(ClassOrInterfaceDeclaration cd, JavaParserFacade jp) {
+            if (!cd.findParent(ClassOrInterfaceDeclaration.class).isPresent()) {
+                inheritance.visit(cd, jp);
+            }
+            super.visit(cd, jp);
+        }
+
+        @Override
+        public void visit(FieldDeclaration fd, JavaParserFacade jp) {
+            if (!fd.findParent(FieldDeclaration.class).isPresent()) {
+                fieldTypes.visit(fd, jp);
+            }
+            super.visit(fd, jp);
         }
     }
 
     private static class InheritancePrinter extends VoidVisitorAdapter<JavaParserFacade> {
 
+        private final DependencySink out;
+
+        public InheritancePrinter(DependencySink out) {
+            this.out = out;
+        }
+
         @Override
         public void visit(ClassOrInterfaceDeclaration cd, JavaParserFacade jp) {
+            Watchdog.checkCancelled();
             for (ClassOrInterfaceType extendedType : cd.getExtendedTypes()) {
                 Context ctx = JavaParserFactory.getContext(cd, jp.getTypeSolver());
                 String name = extendedType.getNameAsString();
@@ -372,8 +1108,9 @@ public class Main {
                         }
                         Optional<CompilationUnit> cu = findCompilationUnit(rrtd);
                         if (cu.isPresent()) {
-                            System.out.print(getCompilationUnitPath(cd.findCompilationUnit()) + "\t");
-                            System.out.println(getCompilationUnitPath(cu));
+                            Symbols symbols = analysis(jp).symbols;
+                            out.edge(symbols, symbols.id(getCompilationUnitPath(cd.findCompilationUnit(), jp)), '\t',
+                                     symbols.id(getCompilationUnitPath(cu, jp)), line(extendedType));
                         }
                     }
                 } catch (com.github.javaparser.symbolsolver.javaparsermodel.UnsolvedSymbolException e) {
@@ -386,8 +1123,15 @@ public class Main {
 
     private static class FieldTypesPrinter extends VoidVisitorAdapter<JavaParserFacade> {
 
+        private final DependencySink out;
+
+        public FieldTypesPrinter(DependencySink out) {
+            this.out = out;
+        }
+
         @Override
         public void visit(FieldDeclaration fd, JavaParserFacade jp) {
+            Watchdog.checkCancelled();
             com.github.javaparser.ast.type.Type t = fd.getVariable(0).getType();
             if (t.isClassOrInterfaceType()) {
                 try {
@@ -402,8 +1146,8 @@ public class Main {
                         }
                         Optional<CompilationUnit> cu = findCompilationUnit(rrtd);
                         if (cu.isPresent()) {
-                            System.out.print(fullQualifiedSignature(fd, jp) + "\t");
-                            System.out.println(getCompilationUnitPath(cu));
+                            Symbols symbols = analysis(jp).symbols;
+                            out.edge(symbols, signature(fd, jp), '\t', symbols.id(getCompilationUnitPath(cu, jp)), line(fd));
                         }
                     }
                 } catch (UnsupportedOperationException e) {
@@ -420,48 +1164,97 @@ public class Main {
         FieldAccessContext ctx = ((FieldAccessContext) JavaParserFactory.getContext(fa, typeSolver));
         Optional<Expression> scope = Optional.of(fa.getScope());
         Collection<ResolvedReferenceTypeDeclaration> rt = findTypeDeclarations(fa, scope, ctx, jp);
+        String name = fa.getName().getId();
         for (ResolvedReferenceTypeDeclaration r : rt) {
-            ResolvedFieldDeclaration rfd = null;
-            try {
-                rfd = r.getField(fa.getName().getId());
-                if (rfd != null) {
-                    return SymbolReference.solved(rfd);
+            ResolvedFieldDeclaration rfd = ResolutionCache.get(jp).field(r, name, () -> {
+                try {
+                    return r.getField(name);
+                } catch (Throwable t) {
+                    return null;
                 }
-            } catch (Throwable t) {
-                System.err.println("Cannot resolve field access " + rfd);
+            });
+            if (rfd != null) {
+                return SymbolReference.solved(rfd);
             }
+            System.err.println("Cannot resolve field access " + rfd);
         }
         return SymbolReference.unsolved(ResolvedFieldDeclaration.class);
     }
 
-    private static String fullQualifiedSignature(BodyDeclaration bd, JavaParserFacade jp) {
+    // the source of every edge printed from within the declaration
+    private static int signature(BodyDeclaration<?> bd, JavaParserFacade jp) {
+        return ResolutionCache.get(jp).symbol(bd, analysis(jp).symbols, () -> fullQualifiedSignature(bd, jp));
+    }
+
+    private static String fullQualifiedSignature(BodyDeclaration<?> bd, JavaParserFacade jp) {
         if (bd instanceof MethodDeclaration) {
             ResolvedMethodDeclaration callingRmd =
                 new JavaParserMethodDeclaration((MethodDeclaration) bd, jp.getTypeSolver());
-            return getCompilationUnitPath(bd.findCompilationUnit()) +
-                callingRmd.declaringType().getName() + "/[MT]/" +describeParameters((MethodDeclaration) bd);
+            return getCompilationUnitPath(bd.findCompilationUnit(), jp) +
+                declaringTypeName(bd, callingRmd.declaringType(), jp) + "/[MT]/" +describeParameters((MethodDeclaration) bd);
         } else if (bd instanceof FieldDeclaration) {
             ResolvedFieldDeclaration fd =
                 new JavaParserFieldDeclaration(((FieldDeclaration) bd).getVariable(0), jp.getTypeSolver());
-            return getCompilationUnitPath(bd.findCompilationUnit()) +
-                fd.declaringType().getName() + "/[FE]/" + fd.getName();
+            return getCompilationUnitPath(bd.findCompilationUnit(), jp) +
+                declaringTypeName(bd, fd.declaringType(), jp) + "/[FE]/" + fd.getName();
         } else if (bd instanceof ConstructorDeclaration) {
-            return getCompilationUnitPath(bd.findCompilationUnit()) +
+            return getCompilationUnitPath(bd.findCompilationUnit(), jp) +
                 ((ConstructorDeclaration) bd).getName() + "/[CS]/" +describeParameters((ConstructorDeclaration) bd);
         }
         return "<unsupported> " + bd.getClass();
     }
 
-    private static String describeParameters(MethodDeclaration md) {
+    static String describeParameters(MethodDeclaration md) {
         return md.getSignature().getParameterTypes().stream()
             .map(t -> t.asString()).collect(joining(",", md.getName() + "(", ")"));
     }
 
-    private static String describeParameters(ConstructorDeclaration cd) {
+    static String describeParameters(ConstructorDeclaration cd) {
         return cd.getParameters().stream()
             .map(p -> p.getType().asString()).collect(joining(",", cd.getName() + "(", ")"));
     }
 
+    // declaring type, kind and parameters of a method declared in the sources
+    private static String describeMember(ResolvedMethodDeclaration rmd, JavaParserFacade jp) {
+        Supplier<String> describe = () -> {
+            String methodType = "/[MT]/";
+            if (rmd.declaringType().getName().toString().equals(rmd.getName().toString())) {
+                methodType = "/[CS]/";
+            }
+            Node member = rmd instanceof JavaParserMethodDeclaration ? ((JavaParserMethodDeclaration) rmd).getWrappedNode() : null;
+            return declaringTypeName(member, rmd.declaringType(), jp) + methodType + describeParameters(rmd);
+        };
+        if (!(rmd instanceof JavaParserMethodDeclaration)) {
+            return describe.get();
+        }
+        return ResolutionCache.get(jp).description(((JavaParserMethodDeclaration) rmd).getWrappedNode(), "member", describe);
+    }
+
+    // the name of the type declaring a member; anonymous classes, which the symbol solver names
+    // anew with a random id every time, are numbered in the order their unit declares them
+    private static String declaringTypeName(Node member, ResolvedTypeDeclaration declaringType, JavaParserFacade jp) {
+        Node parent = member == null ? null : member.getParentNode().orElse(null);
+        if (!(parent instanceof ObjectCreationExpr) || !parent.findCompilationUnit().isPresent()) {
+            return declaringType.getName();
+        }
+        return ResolutionCache.get(jp).description(parent, "anonymous", () -> {
+            int n = 0;
+            for (ObjectCreationExpr oce : parent.findCompilationUnit().get().findAll(ObjectCreationExpr.class)) {
+                if (oce.getAnonymousClassBody().isPresent()) {
+                    n++;
+                    if (oce == parent) {
+                        break;
+                    }
+                }
+            }
+            return "Anonymous-" + n;
+        });
+    }
+
+    private static Node memberNode(ResolvedFieldDeclaration rfd) {
+        return rfd instanceof JavaParserFieldDeclaration ? ((JavaParserFieldDeclaration) rfd).getWrappedNode() : null;
+    }
+
     private static String describeParameters(ResolvedMethodDeclaration md) {
         StringBuilder sb = new StringBuilder();
         sb.append(md.getName());
@@ -483,6 +1276,36 @@ public class Main {
 
     private static Collection<ResolvedReferenceTypeDeclaration> findTypeDeclarations(
             Node node, Optional<Expression> scope, Context ctx, JavaParserFacade jp) {
+        return ResolutionCache.get(jp).typeDeclarations(node, scope, () -> solveTypeDeclarations(node, scope, ctx, jp));
+    }
+
+    // messages and top frames of type calculations known to fail, each one a failure category
+    private static final String[] KNOWN_TYPE_FAILURES = {
+        "T ? super T", "String[] String", "Request org.elasticsearch.action.IndicesRequest", "Object[] Object",
+        "T ?", "K String", "com.facebook.presto.spi.block.Block[] java.lang.Object", "T java.lang.Object",
+        "R ? super T", "E ? super T"
+    };
+    private static final String[] KNOWN_FAILING_FRAMES = {
+        "com.github.javaparser.symbolsolver.javaparsermodel.contexts.MethodCallExprContext.inferTypes",
+        "com.github.javaparser.symbolsolver.javaparsermodel.contexts.MethodCallExprContext.solveMethod"
+    };
+
+    private static String knownTypeFailure(RuntimeException e, Throwable cause) {
+        for (String s : KNOWN_TYPE_FAILURES) {
+            if (cause.getMessage().contains(s)) {
+                return s;
+            }
+        }
+        for (String s : KNOWN_FAILING_FRAMES) {
+            if (e.getStackTrace()[0].toString().contains(s)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private static Collection<ResolvedReferenceTypeDeclaration> solveTypeDeclarations(
+            Node node, Optional<Expression> scope, Context ctx, JavaParserFacade jp) {
         Collection<ResolvedReferenceTypeDeclaration> rt = new ArrayList<>();
         TypeSolver typeSolver = jp.getTypeSolver();
         SymbolReference<ResolvedTypeDeclaration> ref = null;
@@ -494,6 +1317,7 @@ public class Main {
                         ref = ctx.solveType(scopeAsName.getName().getId(), typeSolver);
                     } catch (UnsupportedOperationException e) {
                         if (e.getMessage() != null && e.getMessage().contains("InternalTypes not available for")) {
+                            Metrics.failure("InternalTypes not available for");
                             return rt;
                         }
                         throw e;
@@ -501,6 +1325,7 @@ public class Main {
                     } catch (com.github.javaparser.symbolsolver.javaparsermodel.UnsolvedSymbolException
                             | com.github.javaparser.resolution.UnsolvedSymbolException
                             | IllegalArgumentException e) {
+                        Metrics.failure(e.getClass().getSimpleName());
                         System.err.println(e.getMessage());
                         return rt;
                     }
@@ -511,11 +1336,13 @@ public class Main {
                         typeOfScope = jp.getType(scope.get());
                     } catch (com.github.javaparser.symbolsolver.javaparsermodel.UnsolvedSymbolException
                             | com.github.javaparser.resolution.UnsolvedSymbolException e) {
+                        Metrics.failure(e.getClass().getSimpleName());
                         return rt;
                     } catch (IllegalArgumentException | IndexOutOfBoundsException | IllegalStateException |
                             com.github.javaparser.symbolsolver.logic.ConfilictingGenericTypesException |
                             MethodAmbiguityException e) {
                         // TODO: investigate the cause of this exceptions (use elasticsearch to test)
+                        Metrics.failure(e.getClass().getSimpleName());
                         System.err.println(e.getMessage());
                         return rt;
                     } catch (RuntimeException e) {
@@ -523,27 +1350,19 @@ public class Main {
                         while (cause != null) {
                             if (cause.getMessage() != null && cause.getMessage().contains("Method") &&
                                     cause.getMessage().contains("cannot be resolved in context")) {
+                                Metrics.failure("Method cannot be resolved in context");
                                 System.err.println(e.getMessage());
                                 return rt;
                             }
                             if (cause.getMessage() != null &&
                                     cause.getMessage().contains("Error calculating the type of parameter")) {
+                                Metrics.failure("Error calculating the type of parameter");
                                 System.err.println(e.getMessage());
                                 return rt;
                             }
-                            if (cause.getMessage() != null &&
-                                    (cause.getMessage().contains("T ? super T") ||
-                                         cause.getMessage().contains("String[] String") ||
-                                         cause.getMessage().contains("Request org.elasticsearch.action.IndicesRequest") ||
-                                         cause.getMessage().contains("Object[] Object") ||
-                                         cause.getMessage().contains("T ?") ||
-                                         cause.getMessage().contains("K String") ||
-                                         cause.getMessage().contains("com.facebook.presto.spi.block.Block[] java.lang.Object") ||
-                                         cause.getMessage().contains("T java.lang.Object") ||
-                                         cause.getMessage().contains("R ? super T") ||
-                                         cause.getMessage().contains("E ? super T") ||
-                                         e.getStackTrace()[0].toString().contains("com.github.javaparser.symbolsolver.javaparsermodel.contexts.MethodCallExprContext.inferTypes") ||
-                                         e.getStackTrace()[0].toString().contains("com.github.javaparser.symbolsolver.javaparsermodel.contexts.MethodCallExprContext.solveMethod"))) {
+                            String known = cause.getMessage() == null ? null : knownTypeFailure(e, cause);
+                            if (known != null) {
+                                Metrics.failure(known);
                                 System.err.println(e.getMessage());
                                 return rt;
                             }
@@ -551,6 +1370,7 @@ public class Main {
                                     com.github.javaparser.symbolsolver.javaparsermodel.UnsolvedSymbolException ||
                                     cause instanceof com.github.javaparser.resolution.UnsolvedSymbolException ||
                                     cause instanceof UnsupportedOperationException) {
+                                Metrics.failure(cause.getClass().getSimpleName());
                                 return rt;
                             }
                             if (cause == cause.getCause()) {
@@ -559,6 +1379,7 @@ public class Main {
                                 cause = cause.getCause();
                             }
                         }
+                        Metrics.failure("unexpected " + e.getClass().getSimpleName());
                         System.err.println("--->" + e.getStackTrace()[0]);
                         throw e;
                     }
@@ -601,6 +1422,7 @@ public class Main {
                 | IllegalArgumentException
                 | com.google.common.util.concurrent.UncheckedExecutionException e) {
             // TODO: investigate the cause of this exceptions (use elasticsearch to test)
+            Metrics.failure(e.getClass().getSimpleName());
             System.err.println(e.getMessage());
             return rt;
         } catch (Exception e) {
@@ -609,15 +1431,71 @@ public class Main {
         return rt;
     }
 
-    private static String getCompilationUnitPath(Optional<CompilationUnit> cu) {
+    private static String getCompilationUnitPath(Optional<CompilationUnit> cu, JavaParserFacade jp) {
         if (!cu.isPresent() || !cu.get().getStorage().isPresent()) return "";
         String path = cu.get().getStorage().get().getPath().toString();
-        for (String s : mainArgs) {
-            if (!path.contains(s)) continue;
-            path = path.replace(path.substring(0, path.indexOf(s)+s.length()), "");
+        ((RoutingTypeSolver) jp.getTypeSolver()).recordFile(path);
+        return analysis(jp).unitPath(path);
+    }
+
+    static Analysis analysis(JavaParserFacade jp) {
+        return analyses.get(jp.getTypeSolver());
+    }
+
+    // what printers need of a run besides its type solvers, shared by the copies of these
+    static class Analysis {
+        // compilation unit paths are printed relative to these roots
+        final String[] roots;
+        // printed compilation unit path of each file path under the roots
+        private final Map<String, String> unitPaths = new ConcurrentHashMap<>();
+        // index of the file name in each printed unit path, the '_' before it having been a separator
+        private final Map<String, Integer> fileStarts = new ConcurrentHashMap<>();
+        // file each printed unit path was first made of
+        private final Map<String, Path> unitFiles = new ConcurrentHashMap<>();
+        // names declared in the sources, scopes named otherwise are not resolved
+        SourceNames sourceNames;
+        // edge ends printed by the run, dropped with it
+        final Symbols symbols = new Symbols();
+
+        Analysis(String[] roots) {
+            this.roots = roots;
         }
-        if (path.length() > 0 && path.charAt(0) == '/') path = path.substring(1);
-        return path.replaceAll("/", "_") + "/[CN]/";
+
+        String unitPath(String path) {
+            return unitPaths.computeIfAbsent(path, this::relativePath);
+        }
+
+        // -1 for a unit path of no file under the roots
+        int fileStart(String unitPath) {
+            return fileStarts.getOrDefault(unitPath, -1);
+        }
+
+        // relative to the innermost root holding the file, or the whole path outside every root
+        private String relativePath(String path) {
+            Path file = Paths.get(path).toAbsolutePath().normalize();
+            Path owner = null;
+            for (String s : roots) {
+                Path root = Paths.get(s).toAbsolutePath().normalize();
+                if (file.startsWith(root) && (owner == null || root.startsWith(owner))) {
+                    owner = root;
+                }
+            }
+            path = (owner == null ? file.subpath(0, file.getNameCount()) : owner.relativize(file)).toString();
+            path = path.replace(File.separatorChar, '/');
+            String unitPath = path.replace('/', '_') + "/[CN]/";
+            fileStarts.putIfAbsent(unitPath, path.lastIndexOf('/') + 1);
+            Path other = unitFiles.putIfAbsent(unitPath, file);
+            if (other != null && !other.equals(file)) {
+                // such as the same class in two modules, whose roots print no module
+                System.err.println("Units " + other + " and " + file + " are both printed as " + unitPath +
+                                   ", their dependencies are merged");
+            }
+            return unitPath;
+        }
+    }
+
+    private static int line(Node node) {
+        return node.getBegin().map(p -> p.line).orElse(-1);
     }
 
     private static Optional<CompilationUnit> findCompilationUnit(MethodCallExpr mc, JavaParserFacade jp) {
@@ -635,15 +1513,21 @@ public class Main {
     private static Optional<CompilationUnit> findCompilationUnit(Node node, Optional<Expression> scope, Context ctx, JavaParserFacade jp) {
         Collection<ResolvedReferenceTypeDeclaration> rt = findTypeDeclarations(node, scope, ctx, jp);
         for (ResolvedReferenceTypeDeclaration r : rt) {
-            try {
-                return findCompilationUnit(r);
-            } catch (Throwable t) {
+            Optional<CompilationUnit> cu = ResolutionCache.get(jp).compilationUnit(r, () -> {
+                try {
+                    return findCompilationUnit(r);
+                } catch (Throwable t) {
+                    return null;
+                }
+            });
+            if (cu != null) {
+                return cu;
             }
         }
         return Optional.empty();
     }
 
-    private static Optional<CompilationUnit> findCompilationUnit(ResolvedReferenceTypeDeclaration rrtd) {
+    static Optional<CompilationUnit> findCompilationUnit(ResolvedReferenceTypeDeclaration rrtd) {
         if (rrtd instanceof JavaParserInterfaceDeclaration) {
             return ((JavaParserInterfaceDeclaration) rrtd).getWrappedNode().findCompilationUnit();
         } else if (rrtd instanceof JavaParserClassDeclaration) {
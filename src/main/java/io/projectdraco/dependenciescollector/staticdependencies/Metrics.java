@@ -0,0 +1,215 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+// Phase timings, per file durations, resolution outcomes and failure categories of a run.
+// Everything is also emitted as JFR events when the runtime has JFR.
+class Metrics {
+
+    enum Phase {
+        WALK, PARSE, DISCOVERY, RESOLUTION
+    }
+
+    enum Expression {
+        METHOD_CALL, FIELD_ACCESS, NAME
+    }
+
+    enum Outcome {
+        RESOLVED, UNRESOLVED, FAILED, SKIPPED
+    }
+
+    private static final boolean JFR = jfrAvailable();
+    private static final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private static final Map<String, AtomicLongArray> fileNanos = new ConcurrentHashMap<>();
+    private static final AtomicLongArray outcomes =
+        new AtomicLongArray(Expression.values().length * Outcome.values().length);
+    private static final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    private static final long started = System.nanoTime();
+
+    private static volatile String progressPhase;
+    private static volatile int progressTotal;
+    private static volatile long progressStarted;
+    private static final AtomicInteger progressDone = new AtomicInteger();
+    private static Thread progressThread;
+
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.EventFactory");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // adds the time since start to a phase, and to the file if there is one
+    public static void time(Phase phase, String path, long start) {
+        long nanos = System.nanoTime() - start;
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+        if (path != null) {
+            fileNanos.computeIfAbsent(path, p -> new AtomicLongArray(Phase.values().length))
+                .addAndGet(phase.ordinal(), nanos);
+        }
+        if (JFR) {
+            JfrEvents.phase(phase.name().toLowerCase(), path, nanos);
+        }
+    }
+
+    public static void expression(Expression expression, Outcome outcome) {
+        outcomes.incrementAndGet(expression.ordinal() * Outcome.values().length + outcome.ordinal());
+    }
+
+    public static void failure(String category) {
+        failures.computeIfAbsent(category, c -> new AtomicLong()).incrementAndGet();
+        if (JFR) {
+            JfrEvents.failure(category);
+        }
+    }
+
+    // progress lines report units done out of total for the current phase
+    public static void progress(String phase, int total) {
+        progressDone.set(0);
+        progressTotal = total;
+        progressStarted = System.nanoTime();
+        progressPhase = phase;
+    }
+
+    public static void done() {
+        progressDone.incrementAndGet();
+    }
+
+    public static synchronized void startProgress(long periodMillis) {
+        progressThread = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(periodMillis);
+                    printProgress(System.err);
+                }
+            } catch (InterruptedException e) {
+            }
+        }, "progress");
+        progressThread.setDaemon(true);
+        progressThread.start();
+    }
+
+    public static synchronized void stopProgress() {
+        if (progressThread != null) {
+            progressThread.interrupt();
+            progressThread = null;
+        }
+    }
+
+    private static void printProgress(PrintStream out) {
+        String phase = progressPhase;
+        if (phase == null) {
+            return;
+        }
+        int done = progressDone.get();
+        int total = Math.max(progressTotal, 1);
+        double seconds = (System.nanoTime() - progressStarted) / 1e9;
+        double rate = seconds > 0 ? done / seconds : 0;
+        String eta = rate > 0 ? String.format("%.0f s", (total - done) / rate) : "?";
+        out.println(String.format("%s: %d/%d units (%d%%), %.1f units/s, ETA %s",
+                    phase, done, progressTotal, done * 100 / total, rate, eta));
+    }
+
+    public static void report(PrintStream out) {
+        StringBuilder sb = new StringBuilder("Metrics:");
+        for (Phase p : Phase.values()) {
+            sb.append(String.format(" %s %d ms", p.name().toLowerCase(), phaseNanos.get(p.ordinal()) / 1000000));
+        }
+        for (Expression e : Expression.values()) {
+            sb.append(String.format(" %s %d/%d/%d/%d", name(e), outcome(e, Outcome.RESOLVED),
+                        outcome(e, Outcome.UNRESOLVED), outcome(e, Outcome.FAILED), outcome(e, Outcome.SKIPPED)));
+        }
+        sb.append(" (resolved/unresolved/failed/skipped)");
+        out.println(sb);
+    }
+
+    // JSON summary with the slowest files by total time
+    public static void writeJson(String file, int slowest) throws IOException {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"wallMillis\": ").append((System.nanoTime() - started) / 1000000).append(",\n");
+        sb.append("  \"phaseMillis\": {");
+        for (Phase p : Phase.values()) {
+            sb.append(p.ordinal() == 0 ? "" : ", ").append(string(p.name().toLowerCase())).append(": ")
+                .append(phaseNanos.get(p.ordinal()) / 1000000);
+        }
+        sb.append("},\n  \"expressions\": {");
+        for (Expression e : Expression.values()) {
+            sb.append(e.ordinal() == 0 ? "" : ", ").append(string(name(e))).append(": {");
+            for (Outcome o : Outcome.values()) {
+                sb.append(o.ordinal() == 0 ? "" : ", ").append(string(o.name().toLowerCase())).append(": ")
+                    .append(outcome(e, o));
+            }
+            sb.append("}");
+        }
+        sb.append("},\n  \"failures\": {");
+        String separator = "";
+        for (Map.Entry<String, AtomicLong> f : new TreeMap<>(failures).entrySet()) {
+            sb.append(separator).append("\n    ").append(string(f.getKey())).append(": ").append(f.getValue().get());
+            separator = ",";
+        }
+        sb.append(separator.isEmpty() ? "" : "\n  ").append("},\n  \"slowestFiles\": [");
+        List<Map.Entry<String, AtomicLongArray>> files = fileNanos.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<String, AtomicLongArray> f) -> total(f.getValue())).reversed())
+            .limit(slowest)
+            .collect(Collectors.toList());
+        separator = "";
+        for (Map.Entry<String, AtomicLongArray> f : files) {
+            sb.append(separator).append("\n    {\"path\": ").append(string(f.getKey()))
+                .append(", \"totalMillis\": ").append(total(f.getValue()) / 1000000);
+            for (Phase p : Phase.values()) {
+                if (p != Phase.WALK) {
+                    sb.append(", ").append(string(p.name().toLowerCase() + "Millis")).append(": ")
+                        .append(f.getValue().get(p.ordinal()) / 1000000);
+                }
+            }
+            sb.append("}");
+            separator = ",";
+        }
+        sb.append(separator.isEmpty() ? "" : "\n  ").append("]\n}\n");
+        Files.write(Paths.get(file), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long outcome(Expression e, Outcome o) {
+        return outcomes.get(e.ordinal() * Outcome.values().length + o.ordinal());
+    }
+
+    private static long total(AtomicLongArray nanos) {
+        long total = 0;
+        for (int i = 0; i < nanos.length(); i++) {
+            total += nanos.get(i);
+        }
+        return total;
+    }
+
+    // methodCall, fieldAccess, name
+    private static String name(Expression e) {
+        String[] words = e.name().toLowerCase().split("_");
+        StringBuilder sb = new StringBuilder(words[0]);
+        for (int i = 1; i < words.length; i++) {
+            sb.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
+        }
+        return sb.toString();
+    }
+
+    private static String string(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,418 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+class ParsedUnitStore {
+
+    public static final int UNBOUNDED = -1;
+
+    private final int maxResident;
+    private final Map<String, List<String>> pathsByRoot = new ConcurrentHashMap<>();
+    private final Map<String, CompilationUnit> resident = new ConcurrentHashMap<>();
+    private final AtomicInteger admitted = new AtomicInteger();
+    // compact per-unit summary kept even when the AST is not resident
+    private final Map<String, Long> parseNanos = new ConcurrentHashMap<>();
+    private final Set<String> unparseable = ConcurrentHashMap.newKeySet();
+    private final AtomicLong parses = new AtomicLong();
+    private final AtomicLong reparses = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong savedNanos = new AtomicLong();
+    // units whose reuse was counted in this pass: later hits, such as type solver lookups, save no parse
+    private final Set<String> counted = ConcurrentHashMap.newKeySet();
+    private final AtomicLong lookups = new AtomicLong();
+    private BiFunction<String, String, CompilationUnit> parser = Main::parse;
+    // slots of the queue between the reading and parsing stages, 0 reads while parsing
+    private int pipeline;
+    private boolean lean;
+    private final AtomicLong leanParses = new AtomicLong();
+    private final AtomicLong leanFallbacks = new AtomicLong();
+    private final AtomicLong leanNanos = new AtomicLong();
+    private final AtomicLong filesRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong filesMapped = new AtomicLong();
+    private final AtomicLong depthSamples = new AtomicLong();
+    private final AtomicLong depthSum = new AtomicLong();
+    private final AtomicLong parserWaitNanos = new AtomicLong();
+    private final AtomicLong readerWaitNanos = new AtomicLong();
+
+    // files at least this large are mapped rather than copied
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final String[] END = new String[2];
+    // estimated heap taken by each AST node, tokens and ranges included
+    private static final long BYTES_PER_NODE = 850;
+
+    // estimated bytes of resident ASTs, 0 if unbounded; units go first by least parse time per byte,
+    // aged by the priority of the last one evicted (greedy dual size)
+    private long maxBytes;
+    private final Map<String, Residency> residency = new HashMap<>();
+    private final TreeSet<Residency> byPriority = new TreeSet<>();
+    private double inflation;
+    private long residentBytes;
+    private long peakBytes;
+    private long releasableBytes;
+    private long residencies;
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    private static class Residency implements Comparable<Residency> {
+        final String path;
+        final long bytes;
+        final long id;
+        double priority;
+
+        Residency(String path, long bytes, long id) {
+            this.path = path;
+            this.bytes = bytes;
+            this.id = id;
+        }
+
+        public int compareTo(Residency o) {
+            int c = Double.compare(priority, o.priority);
+            return c != 0 ? c : Long.compare(id, o.id);
+        }
+    }
+
+    public ParsedUnitStore(int maxResident) {
+        this.maxResident = maxResident;
+    }
+
+    // parses the path, or the content read from it unless null; returns null for units that cannot be parsed
+    public void setParser(BiFunction<String, String, CompilationUnit> parser) {
+        this.parser = parser;
+    }
+
+    public void setPipeline(int slots) {
+        pipeline = slots;
+    }
+
+    public void setLeanDiscovery(boolean lean) {
+        this.lean = lean;
+    }
+
+    // ceiling on the estimated bytes of resident ASTs, which are evicted and parsed again when needed
+    public void setMaxBytes(long bytes) {
+        maxBytes = bytes;
+    }
+
+    public boolean isMemoryBounded() {
+        return maxBytes > 0;
+    }
+
+    // true, once, whenever a quarter of the ceiling was evicted since the last time; evicted ASTs are
+    // only freed once the resolution caches that refer to them are dropped too
+    public synchronized boolean release() {
+        if (maxBytes == 0 || releasableBytes < maxBytes / 4) {
+            return false;
+        }
+        releasableBytes = 0;
+        return true;
+    }
+
+    public Stream<CompilationUnit> units(String root) {
+        if (pipeline > 0) {
+            return pipelined(root, this::get);
+        }
+        return paths(root).stream().map(this::get);
+    }
+
+    // units to discover declarations in: with lean discovery, the ones the store would not keep are
+    // parsed from their declarations alone, since analysis has to parse them in full again anyway
+    public Stream<CompilationUnit> declarations(String root) {
+        if (!lean) {
+            return units(root);
+        }
+        if (pipeline > 0) {
+            return pipelined(root, this::declarations);
+        }
+        return paths(root).stream().map(p -> declarations(p, null));
+    }
+
+    private CompilationUnit declarations(String path, String content) {
+        boolean kept = maxBytes == 0 && (maxResident == UNBOUNDED || admitted.get() < maxResident);
+        if (kept || resident.containsKey(path) || unparseable.contains(path)) {
+            return get(path, content);
+        }
+        if (content == null) {
+            content = read(path);
+        }
+        CompilationUnit cu = null;
+        if (content != null) {
+            long start = System.nanoTime();
+            cu = DeclarationSource.parse(path, content);
+            leanNanos.addAndGet(System.nanoTime() - start);
+            Metrics.time(Metrics.Phase.PARSE, path, start);
+        }
+        if (cu == null) {
+            leanFallbacks.incrementAndGet();
+            return get(path, content);
+        }
+        leanParses.incrementAndGet();
+        return cu;
+    }
+
+    // units in the order of paths(root), read ahead by a thread of its own while the caller parses
+    // them. Walking the root is not part of the pipeline: the paths are known in full beforehand,
+    // for the progress total and the routing of type lookups. The reader waits while the queue is
+    // full, and gives up once the stream is closed or dropped before its end.
+    private Stream<CompilationUnit> pipelined(String root, BiFunction<String, String, CompilationUnit> load) {
+        List<String> paths = paths(root);
+        // path and content pairs, content null for units parsed already or unreadable
+        BlockingQueue<String[]> contents = new ArrayBlockingQueue<>(pipeline);
+        Iterator<CompilationUnit> it = new Iterator<CompilationUnit>() {
+            String[] next;
+
+            public boolean hasNext() {
+                if (next == null) {
+                    depthSamples.incrementAndGet();
+                    depthSum.addAndGet(contents.size());
+                    next = take(contents, parserWaitNanos);
+                }
+                return next != END;
+            }
+
+            public CompilationUnit next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String[] pair = next;
+                next = null;
+                return load.apply(pair[0], pair[1]);
+            }
+        };
+        Reference<Iterator<CompilationUnit>> consumer = new WeakReference<>(it);
+        Thread reader = new Thread(() -> {
+            for (String path : paths) {
+                String content = resident.containsKey(path) || unparseable.contains(path) ? null : read(path);
+                if (!put(contents, new String[] { path, content }, consumer)) {
+                    return;
+                }
+            }
+            put(contents, END, consumer);
+        }, "reader");
+        reader.setDaemon(true);
+        reader.start();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED), false)
+            .onClose(reader::interrupt);
+    }
+
+    private String read(String path) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer;
+            if (size >= MAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                filesMapped.incrementAndGet();
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                }
+                buffer.flip();
+            }
+            filesRead.incrementAndGet();
+            bytesRead.addAndGet(size);
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // false if the consumer is gone, having closed the stream or dropped it
+    private <T> boolean put(BlockingQueue<T> queue, T element, Reference<?> consumer) {
+        if (queue.offer(element)) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            while (!queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+                if (consumer.get() == null) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            readerWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue, AtomicLong waitNanos) {
+        try {
+            T element = queue.poll();
+            if (element == null) {
+                long start = System.nanoTime();
+                element = queue.take();
+                if (waitNanos != null) {
+                    waitNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+            return element;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public List<String> paths(String root) {
+        return pathsByRoot.computeIfAbsent(root, r -> {
+            long start = System.nanoTime();
+            List<String> paths = Main.walk(Paths.get(r))
+                .filter(p -> p.toString().endsWith(".java"))
+                .map(p -> p.toAbsolutePath().toString())
+                .collect(Collectors.toList());
+            Metrics.time(Metrics.Phase.WALK, null, start);
+            return paths;
+        });
+    }
+
+    // parses ahead, on the given pool, the units of a root that will stay resident
+    public void prefetch(String root, ForkJoinPool pool) throws InterruptedException, ExecutionException {
+        List<String> paths = paths(root);
+        if (maxResident != UNBOUNDED) {
+            paths = paths.subList(0, Math.min(paths.size(), Math.max(0, maxResident - admitted.get())));
+        }
+        List<String> ahead = paths;
+        pool.submit(() -> ahead.parallelStream().forEach(path -> {
+            // parsing what would be evicted before its turn comes is wasted
+            if (maxBytes == 0 || residentBytes() < maxBytes) {
+                get(path);
+            }
+        })).get();
+    }
+
+    public CompilationUnit get(String path) {
+        return get(path, null);
+    }
+
+    private CompilationUnit get(String path, String content) {
+        CompilationUnit cu = resident.get(path);
+        if (cu != null || unparseable.contains(path)) {
+            if (cu != null && maxBytes > 0) {
+                touch(path);
+            }
+            lookups.incrementAndGet();
+            if (counted.add(path)) {
+                reuses.incrementAndGet();
+                savedNanos.addAndGet(parseNanos.getOrDefault(path, 0L));
+            }
+            return cu;
+        }
+        if (parseNanos.containsKey(path)) {
+            reparses.incrementAndGet();
+        } else {
+            parses.incrementAndGet();
+        }
+        long start = System.nanoTime();
+        cu = parser.apply(path, content);
+        parseNanos.put(path, System.nanoTime() - start);
+        Metrics.time(Metrics.Phase.PARSE, path, start);
+        if (cu == null) {
+            unparseable.add(path);
+        } else if (maxBytes > 0) {
+            admit(path, cu);
+        } else if (maxResident == UNBOUNDED || admitted.getAndIncrement() < maxResident) {
+            // no replacement once full: both passes scan in the same order, so
+            // keeping the first units resident beats an LRU that would miss on every read
+            resident.put(path, cu);
+        }
+        return cu;
+    }
+
+    private synchronized void admit(String path, CompilationUnit cu) {
+        long bytes = cu.stream().count() * BYTES_PER_NODE;
+        if (residency.containsKey(path) || bytes > maxBytes) {
+            return;
+        }
+        while (residentBytes + bytes > maxBytes) {
+            Residency victim = byPriority.pollFirst();
+            inflation = victim.priority;
+            residency.remove(victim.path);
+            resident.remove(victim.path);
+            residentBytes -= victim.bytes;
+            releasableBytes += victim.bytes;
+            evictions.incrementAndGet();
+            evictedBytes.addAndGet(victim.bytes);
+        }
+        Residency r = new Residency(path, bytes, residencies++);
+        residency.put(path, r);
+        resident.put(path, cu);
+        residentBytes += bytes;
+        peakBytes = Math.max(peakBytes, residentBytes);
+        prioritize(r);
+    }
+
+    private synchronized void touch(String path) {
+        Residency r = residency.get(path);
+        if (r != null) {
+            byPriority.remove(r);
+            prioritize(r);
+        }
+    }
+
+    private void prioritize(Residency r) {
+        r.priority = inflation + (double) parseNanos.getOrDefault(r.path, 0L) / r.bytes;
+        byPriority.add(r);
+    }
+
+    private synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    // a pass reads every unit again, from discovery to printing, saving one parse of each resident one
+    public void beginPass() {
+        counted.clear();
+    }
+
+    // forgets the unit, and where units are, so that added and deleted files are seen
+    public void invalidate(String path) {
+        synchronized (this) {
+            Residency r = residency.remove(path);
+            if (r != null) {
+                byPriority.remove(r);
+                residentBytes -= r.bytes;
+            }
+        }
+        if (resident.remove(path) != null && maxBytes == 0) {
+            admitted.decrementAndGet();
+        }
+        parseNanos.remove(path);
+        unparseable.remove(path);
+        counted.remove(path);
+        pathsByRoot.clear();
+    }
+
+    public void report(PrintStream out) {
+        out.println(String.format("Parsed %d units (%d re-parsed), reused %d (%d lookups), saved %d ms of parse time",
+                    parses.get(), reparses.get(), reuses.get(), lookups.get(), savedNanos.get() / 1000000));
+        if (maxBytes > 0) {
+            synchronized (this) {
+                out.println(String.format("AST memory: %d units, %d MB resident (peak %d MB of %d MB), " +
+                            "%d evictions (%d MB)", residency.size(), residentBytes >> 20, peakBytes >> 20, maxBytes >> 20,
+                            evictions.get(), evictedBytes.get() >> 20));
+            }
+        }
+        if (lean) {
+            out.println(String.format("Lean discovery: parsed %d units in %d ms, %d in full",
+                        leanParses.get(), leanNanos.get() / 1000000, leanFallbacks.get()));
+        }
+        if (pipeline > 0) {
+            // a parser waiting on reads is I/O-bound, a reader waiting on the parser parse-bound
+            out.println(String.format("Pipeline: read %d files (%d KB, %d mapped), mean queue depth %.1f of %d, " +
+                        "parser waited %d ms, reader waited %d ms",
+                        filesRead.get(), bytesRead.get() / 1024, filesMapped.get(),
+                        depthSamples.get() == 0 ? 0.0 : (double) depthSum.get() / depthSamples.get(), pipeline,
+                        parserWaitNanos.get() / 1000000, readerWaitNanos.get() / 1000000));
+        }
+    }
+}
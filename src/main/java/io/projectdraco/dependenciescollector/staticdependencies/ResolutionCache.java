@@ -0,0 +1,292 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.body.*;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.type.*;
+import com.github.javaparser.resolution.declarations.*;
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+import com.github.javaparser.symbolsolver.model.resolution.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+class ResolutionCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final Map<JavaParserFacade, ResolutionCache> instances =
+        Collections.synchronizedMap(new WeakHashMap<>());
+    private static volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    private static final Object NONE = new Object();
+
+    // resolution state belongs to a facade, and therefore to the thread that owns its type solvers
+    public static ResolutionCache get(JavaParserFacade jp) {
+        return instances.computeIfAbsent(jp, k -> new ResolutionCache());
+    }
+
+    public static void setMaxEntries(int entries) {
+        maxEntries = entries;
+    }
+
+    private final Table<ScopeKey, Collection<ResolvedReferenceTypeDeclaration>> scopes = new Table<>("scopes");
+    private final Table<ScopeKey, SymbolReference<ResolvedMethodDeclaration>> methods = new Table<>("methods");
+    private final Table<String, ResolvedFieldDeclaration> fields = new Table<>("fields");
+    private final Table<String, Optional<CompilationUnit>> units = new Table<>("units");
+    private final Table<ScopeKey, Set<String>> localNames = new Table<>("local names");
+    private final Table<ScopeKey, Set<String>> inheritedFields = new Table<>("inherited fields");
+    private final Table<ScopeKey, Object> values = new Table<>("names");
+    private final Table<ScopeKey, Integer> symbols = new Table<>("symbols");
+    private final Table<ScopeKey, String> descriptions = new Table<>("descriptions");
+
+    public Collection<ResolvedReferenceTypeDeclaration> typeDeclarations(
+            Node node, Optional<Expression> scope, Supplier<Collection<ResolvedReferenceTypeDeclaration>> solve) {
+        if (maxEntries == 0) {
+            return solve.get();
+        }
+        return scopes.get(scopeKey(node, scope), solve);
+    }
+
+    // a call without arguments resolves to the same declaration wherever its scope resolves to the same type
+    public SymbolReference<ResolvedMethodDeclaration> method(
+            MethodCallExpr mc, Supplier<SymbolReference<ResolvedMethodDeclaration>> solve) {
+        if (maxEntries == 0) {
+            return solve.get();
+        }
+        ScopeKey key = scopeKey(mc, mc.getScope());
+        if (!mc.getArguments().isEmpty() || key.kind == ScopeKey.EXPRESSION) {
+            return solve.get();
+        }
+        return methods.get(new ScopeKey(key.node, mc.getName().getId() + "#" + key.name, key.kind), solve);
+    }
+
+    // A name that is not declared locally anywhere in its enclosing types resolves the same way
+    // wherever it appears in its type. Failures are remembered too, and returned as null.
+    @SuppressWarnings("unchecked")
+    public SymbolReference<? extends ResolvedValueDeclaration> value(
+            NameExpr ne, Supplier<SymbolReference<? extends ResolvedValueDeclaration>> solve) {
+        Node typeNode = typeOfThisNode(ne);
+        String name = ne.getName().getId();
+        if (maxEntries == 0 || typeNode == null || isLocalName(typeNode, name)) {
+            return solve.get();
+        }
+        return (SymbolReference<? extends ResolvedValueDeclaration>)
+            values.get(new ScopeKey(typeNode, name, ScopeKey.NAME), () -> solve.get());
+    }
+
+    // true if the scope is a name that can only refer to a library type, so that nothing reached
+    // through it is declared in the sources: a name neither the sources nor its enclosing types
+    // declare, and no field these inherit, as a field of a library type may have a source type
+    public boolean isLibraryScope(Optional<Expression> scope, SourceNames sources, JavaParserFacade jp) {
+        if (sources == null || !scope.isPresent() || !(scope.get() instanceof NameExpr)) {
+            return false;
+        }
+        String name = ((NameExpr) scope.get()).getName().getId();
+        Node typeNode = typeOfThisNode(scope.get());
+        return !sources.isDeclared(name) && typeNode != null && !isLocalName(typeNode, name)
+            && !isInheritedField(typeNode, name, jp);
+    }
+
+    private boolean isLocalName(Node typeNode, String name) {
+        for (Node n = typeNode; n != null; n = typeOfThisNode(n.getParentNode().orElse(null))) {
+            Node t = n;
+            if (localNames.get(new ScopeKey(t, null, ScopeKey.EXPRESSION), () -> collectLocalNames(t)).contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // also true if the fields of one of the enclosing types cannot be told
+    private boolean isInheritedField(Node typeNode, String name, JavaParserFacade jp) {
+        for (Node n = typeNode; n != null; n = typeOfThisNode(n.getParentNode().orElse(null))) {
+            Node t = n;
+            Set<String> fields = inheritedFields.get(new ScopeKey(t, null, ScopeKey.EXPRESSION), () -> collectFields(t, jp));
+            if (fields == null || fields.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the interned symbol of a declaration, described once per declaration node
+    public int symbol(Node declaration, Symbols table, Supplier<String> describe) {
+        if (maxEntries == 0) {
+            return table.id(describe.get());
+        }
+        return symbols.get(new ScopeKey(declaration, null, ScopeKey.EXPRESSION), () -> table.id(describe.get()));
+    }
+
+    // a description of part of a declaration, such as its parameters
+    public String description(Node declaration, String part, Supplier<String> describe) {
+        return descriptions.get(new ScopeKey(declaration, part, ScopeKey.EXPRESSION), describe);
+    }
+
+    // returns null if the type has no such field
+    public ResolvedFieldDeclaration field(
+            ResolvedReferenceTypeDeclaration rrtd, String name, Supplier<ResolvedFieldDeclaration> solve) {
+        String type = qualifiedName(rrtd);
+        return type == null ? solve.get() : fields.get(type + "#" + name, solve);
+    }
+
+    // returns null if the type is not declared in the analysed sources
+    public Optional<CompilationUnit> compilationUnit(
+            ResolvedReferenceTypeDeclaration rrtd, Supplier<Optional<CompilationUnit>> find) {
+        String type = qualifiedName(rrtd);
+        return type == null ? find.get() : units.get(type, find);
+    }
+
+    private ScopeKey scopeKey(Node node, Optional<Expression> scope) {
+        if (!scope.isPresent()) {
+            return new ScopeKey(typeOfThisNode(node), null, ScopeKey.IMPLICIT_THIS);
+        }
+        Expression e = scope.get();
+        if (e instanceof ThisExpr && !((ThisExpr) e).getClassExpr().isPresent()) {
+            return new ScopeKey(typeOfThisNode(e), "this", ScopeKey.NAME);
+        }
+        if (e instanceof NameExpr) {
+            // a name that is never declared locally within the type refers to the same field or type everywhere in it
+            Node typeNode = typeOfThisNode(e);
+            String name = ((NameExpr) e).getName().getId();
+            if (typeNode != null && !localNames.get(new ScopeKey(typeNode, null, ScopeKey.EXPRESSION), () -> collectLocalNames(typeNode)).contains(name)) {
+                return new ScopeKey(typeNode, name, ScopeKey.NAME);
+            }
+        }
+        return new ScopeKey(e, null, ScopeKey.EXPRESSION);
+    }
+
+    // the node JavaParserFacade.getTypeOfThisIn resolves for the given node
+    private static Node typeOfThisNode(Node node) {
+        while (node != null) {
+            if (node instanceof ClassOrInterfaceDeclaration || node instanceof EnumDeclaration) {
+                return node;
+            }
+            if (node instanceof ObjectCreationExpr && ((ObjectCreationExpr) node).getAnonymousClassBody().isPresent()) {
+                return node;
+            }
+            node = node.getParentNode().orElse(null);
+        }
+        return null;
+    }
+
+    private static Set<String> collectLocalNames(Node typeNode) {
+        Set<String> names = new HashSet<>();
+        for (com.github.javaparser.ast.body.Parameter p : typeNode.findAll(com.github.javaparser.ast.body.Parameter.class)) {
+            names.add(p.getNameAsString());
+        }
+        for (VariableDeclarator vd : typeNode.findAll(VariableDeclarator.class)) {
+            if (!(vd.getParentNode().orElse(null) instanceof FieldDeclaration)) {
+                names.add(vd.getNameAsString());
+            }
+        }
+        for (TypeParameter tp : typeNode.findAll(TypeParameter.class)) {
+            names.add(tp.getNameAsString());
+        }
+        for (ClassOrInterfaceDeclaration coid : typeNode.findAll(ClassOrInterfaceDeclaration.class)) {
+            if (coid.isLocalClassDeclaration()) {
+                names.add(coid.getNameAsString());
+            }
+        }
+        return names;
+    }
+
+    // names of the fields of the type and its ancestors, null if they cannot be resolved
+    private static Set<String> collectFields(Node typeNode, JavaParserFacade jp) {
+        try {
+            Set<String> names = new HashSet<>();
+            for (ResolvedFieldDeclaration f : jp.getTypeOfThisIn(typeNode).asReferenceType().getTypeDeclaration().getAllFields()) {
+                names.add(f.getName());
+            }
+            return names;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String qualifiedName(ResolvedReferenceTypeDeclaration rrtd) {
+        try {
+            return rrtd.getQualifiedName();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public static void report(PrintStream out) {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        synchronized (instances) {
+            for (ResolutionCache cache : instances.values()) {
+                for (Table<?, ?> table : Arrays.asList(cache.scopes, cache.methods, cache.fields, cache.units, cache.values,
+                            cache.symbols, cache.descriptions)) {
+                    long[] total = totals.computeIfAbsent(table.name, k -> new long[2]);
+                    total[0] += table.hits.get();
+                    total[1] += table.misses.get();
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder("Resolution cache:");
+        for (Map.Entry<String, long[]> e : totals.entrySet()) {
+            sb.append(String.format(" %s %d hits/%d misses", e.getKey(), e.getValue()[0], e.getValue()[1]));
+        }
+        out.println(sb);
+    }
+
+    private static class ScopeKey {
+        static final int IMPLICIT_THIS = 0;
+        static final int NAME = 1;
+        static final int EXPRESSION = 2;
+
+        final Node node;
+        final String name;
+        final int kind;
+
+        ScopeKey(Node node, String name, int kind) {
+            this.node = node;
+            this.name = name;
+            this.kind = kind;
+        }
+
+        // nodes compare structurally, keys must compare them by identity
+        public boolean equals(Object o) {
+            if (!(o instanceof ScopeKey)) return false;
+            ScopeKey k = (ScopeKey) o;
+            return node == k.node && kind == k.kind && Objects.equals(name, k.name);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(node) * 31 + Objects.hashCode(name) * 3 + kind;
+        }
+    }
+
+    private static class Table<K, V> {
+        final String name;
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        private final Map<K, Object> entries = new LinkedHashMap<K, Object>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<K, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        Table(String name) {
+            this.name = name;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(K key, Supplier<V> compute) {
+            if (maxEntries == 0) {
+                return compute.get();
+            }
+            Object value = entries.get(key);
+            if (value != null) {
+                hits.incrementAndGet();
+                return value == NONE ? null : (V) value;
+            }
+            misses.incrementAndGet();
+            V computed = compute.get();
+            entries.put(key, computed == null ? NONE : computed);
+            return computed;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+// Multi-producer, single-consumer ring of reusable record buffers. Producers claim a slot with a
+// single atomic increment, copy their record into it and publish it; a writer thread drains slots
+// in claim order into the wrapped sink. Producers only wait when the ring is full.
+class RingBufferSink implements DependencySink {
+
+    private final DependencySink out;
+    private final int mask;
+    private final StringBuilder[] slots;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean closing;
+    private volatile Throwable failure;
+    private final Thread writer;
+
+    public RingBufferSink(DependencySink out, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two: " + capacity);
+        }
+        this.out = out;
+        this.mask = capacity - 1;
+        this.slots = new StringBuilder[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new StringBuilder(128);
+            published.set(i, -1);
+        }
+        writer = new Thread(this::drain, "dependency-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void edge(CharSequence source, char separator, CharSequence target) {
+        long seq = claim();
+        StringBuilder slot = slots[(int) seq & mask];
+        slot.setLength(0);
+        slot.append(source).append(separator).append(target).append('\n');
+        published.lazySet((int) seq & mask, seq);
+    }
+
+    public void lines(CharSequence lines) {
+        long seq = claim();
+        StringBuilder slot = slots[(int) seq & mask];
+        slot.setLength(0);
+        slot.append(lines);
+        published.lazySet((int) seq & mask, seq);
+    }
+
+    private long claim() {
+        long seq = claimed.getAndIncrement();
+        while (seq - consumed >= slots.length) {
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+            Thread.yield();
+        }
+        return seq;
+    }
+
+    private void drain() {
+        try {
+            for (long seq = 0; ; seq++) {
+                int slot = (int) seq & mask;
+                int idle = 0;
+                while (published.get(slot) != seq) {
+                    if (closing && claimed.get() == seq) {
+                        return;
+                    }
+                    if (++idle < 100) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(100000);
+                    }
+                }
+                out.lines(slots[slot]);
+                consumed = seq + 1;
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    // waits until every claimed record is written
+    public void close() throws IOException {
+        closing = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+        out.close();
+    }
+}
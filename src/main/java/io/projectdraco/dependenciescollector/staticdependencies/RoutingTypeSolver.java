@@ -0,0 +1,205 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.resolution.declarations.*;
+import com.github.javaparser.symbolsolver.model.resolution.*;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.jar.*;
+import java.util.stream.*;
+
+// Combined type solver that only asks, in the order they were added, the solvers that can solve a
+// name: a root solver if a prefix of the name is one of the units of its root, the JDK solver if a
+// prefix is one of the JDK packages, others if they say so. Solvers given no route are always asked.
+// The result is the one the combined solver would give, without the probing of every solver before.
+class RoutingTypeSolver extends CombinedTypeSolver {
+
+    // probes and hits of the solvers of each kind, over every instance
+    private static final Map<String, AtomicLong[]> stats = new ConcurrentSkipListMap<>();
+    private static final AtomicLong lookups = new AtomicLong();
+    private static final AtomicLong skipped = new AtomicLong();
+
+    private final List<TypeSolver> solvers = new ArrayList<>();
+    private final List<Predicate<String>> routes = new ArrayList<>();
+    private final List<String> kinds = new ArrayList<>();
+    // solvers of the roots holding each unit, named as its path relative to the root with dots
+    private final Map<String, BitSet> owners = new HashMap<>();
+    // files of the source types solved since recording began, null while not recording
+    private volatile Set<String> solvedFiles;
+
+    public void add(TypeSolver ts) {
+        add(ts, "other", null);
+    }
+
+    public void add(TypeSolver ts, String kind, Predicate<String> route) {
+        super.add(ts);
+        solvers.add(ts);
+        routes.add(route);
+        kinds.add(kind);
+    }
+
+    // a solver of the types in the given units of a root, found by their path, like a JavaParserTypeSolver does
+    public void addRoot(TypeSolver ts, String root, Collection<String> paths) {
+        int index = solvers.size();
+        Path r = Paths.get(root).toAbsolutePath();
+        for (String path : paths) {
+            String unit = r.relativize(Paths.get(path)).toString();
+            unit = unit.substring(0, unit.length() - ".java".length()).replace(File.separatorChar, '.');
+            owners.computeIfAbsent(unit, k -> new BitSet()).set(index);
+        }
+        add(ts, "root", null);
+    }
+
+    public void addJdk(TypeSolver ts) {
+        add(ts, "jdk", RoutingTypeSolver::isJdkType);
+    }
+
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        Watchdog.checkCancelled();
+        lookups.incrementAndGet();
+        BitSet owned = owned(name);
+        for (int i = 0; i < solvers.size(); i++) {
+            Predicate<String> route = routes.get(i);
+            if (kinds.get(i).equals("root") ? !owned.get(i) : route != null && !route.test(name)) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            AtomicLong[] s = stats.computeIfAbsent(kinds.get(i), k -> new AtomicLong[] { new AtomicLong(), new AtomicLong() });
+            s[0].incrementAndGet();
+            SymbolReference<ResolvedReferenceTypeDeclaration> result = solvers.get(i).tryToSolveType(name);
+            if (result.isSolved()) {
+                s[1].incrementAndGet();
+                if (solvedFiles != null && kinds.get(i).equals("root")) {
+                    recordFile(result.getCorrespondingDeclaration());
+                }
+                return result;
+            }
+        }
+        return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+    }
+
+    // records the files the source types solved from now on are declared in, until they are taken
+    public void startRecording() {
+        solvedFiles = ConcurrentHashMap.newKeySet();
+    }
+
+    public Set<String> stopRecording() {
+        Set<String> files = solvedFiles;
+        solvedFiles = null;
+        return files == null ? Collections.emptySet() : files;
+    }
+
+    public void recordFile(String file) {
+        Set<String> files = solvedFiles;
+        if (files != null) {
+            files.add(file);
+        }
+    }
+
+    private void recordFile(ResolvedReferenceTypeDeclaration declaration) {
+        try {
+            Main.findCompilationUnit(declaration).flatMap(cu -> cu.getStorage())
+                .ifPresent(storage -> recordFile(storage.getPath().toString()));
+        } catch (IllegalArgumentException e) {
+            // annotations, whose declarations do not give their node
+        }
+    }
+
+    // roots holding a unit named as a prefix of the name, which declares the type or holds it
+    private BitSet owned(String name) {
+        BitSet owned = new BitSet();
+        for (int dot = name.length(); dot > 0; dot = name.lastIndexOf('.', dot - 1)) {
+            BitSet b = owners.get(name.substring(0, dot));
+            if (b != null) {
+                owned.or(b);
+            }
+        }
+        return owned;
+    }
+
+    private static boolean isJdkType(String name) {
+        if (!name.startsWith("java.") && !name.startsWith("javax.")) {
+            return false;
+        }
+        Set<String> packages = JdkPackages.PACKAGES;
+        if (packages.isEmpty()) {
+            return true;
+        }
+        for (int dot = name.lastIndexOf('.'); dot > 0; dot = name.lastIndexOf('.', dot - 1)) {
+            if (packages.contains(name.substring(0, dot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void report(PrintStream out) {
+        if (lookups.get() == 0) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(String.format("Type routing: %d lookups, %d probes skipped;",
+                    lookups.get(), skipped.get()));
+        for (Map.Entry<String, AtomicLong[]> e : stats.entrySet()) {
+            sb.append(String.format(" %s %d hits/%d probes", e.getKey(), e.getValue()[1].get(), e.getValue()[0].get()));
+        }
+        out.println(sb);
+    }
+
+    // java and javax packages the JDK solver can load classes of: the runtime's, read from its
+    // image or boot class path, and the ones on the class path. Empty if they cannot be read.
+    private static class JdkPackages {
+        static final Set<String> PACKAGES = read();
+
+        private static Set<String> read() {
+            Set<String> packages = new HashSet<>();
+            try {
+                try {
+                    FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+                    try (Stream<Path> s = Files.list(jrt.getPath("/packages"))) {
+                        s.forEach(p -> packages.add(p.getFileName().toString()));
+                    }
+                } catch (ProviderNotFoundException | FileSystemNotFoundException e) {
+                    addElements(System.getProperty("sun.boot.class.path"), packages);
+                }
+                addElements(System.getProperty("java.class.path"), packages);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Cannot list JDK packages, routing every java and javax name to the JDK: " + e);
+                return Collections.emptySet();
+            }
+            packages.removeIf(p -> !p.startsWith("java.") && !p.startsWith("javax."));
+            return packages;
+        }
+
+        private static void addElements(String classpath, Set<String> packages) throws IOException {
+            if (classpath == null) {
+                return;
+            }
+            for (String element : classpath.split(File.pathSeparator)) {
+                Path p = Paths.get(element);
+                if (Files.isDirectory(p)) {
+                    try (Stream<Path> s = Files.walk(p)) {
+                        s.filter(f -> f.toString().endsWith(".class")).forEach(f ->
+                                packageOf(p.relativize(f).toString().replace(File.separatorChar, '/'), packages));
+                    }
+                } else if (Files.isRegularFile(p)) {
+                    try (JarFile jar = new JarFile(p.toFile())) {
+                        jar.stream().forEach(e -> packageOf(e.getName(), packages));
+                    }
+                }
+            }
+        }
+
+        private static void packageOf(String entry, Set<String> packages) {
+            int slash = entry.lastIndexOf('/');
+            if (entry.endsWith(".class") && slash > 0) {
+                packages.add(entry.substring(0, slash).replace('/', '.'));
+            }
+        }
+    }
+}
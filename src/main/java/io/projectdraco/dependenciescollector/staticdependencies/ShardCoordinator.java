@@ -0,0 +1,224 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.symbolsolver.javaparsermodel.*;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+// Splits the units of the roots into shards of whole directories and analyses each shard in a
+// worker JVM of its own. Discovery runs once, here; workers read what it found, resolve against
+// every root through a shared type index, parsing only the units they print or resolve into, and
+// print only the units of their shard, each in a block of its own. The blocks are then put back in
+// the order of the walk, so that the output is the one of a single process.
+class ShardCoordinator {
+
+    // starts the line naming the unit of a block, which no printed line starts with
+    private static final char BLOCK = '\0';
+
+    // options that belong to the coordinator, with the number of arguments they take
+    private static final Map<String, Integer> COORDINATOR_OPTIONS = new HashMap<>();
+    static {
+        COORDINATOR_OPTIONS.put("--workers", 1);
+        COORDINATOR_OPTIONS.put("--type-index", 1);
+        COORDINATOR_OPTIONS.put("--binary", 1);
+        COORDINATOR_OPTIONS.put("--ring-buffer", 1);
+        COORDINATOR_OPTIONS.put("--metrics", 1);
+        COORDINATOR_OPTIONS.put("--slowest", 1);
+        COORDINATOR_OPTIONS.put("--progress", 1);
+    }
+
+    private final int workers;
+    private final String[] options;
+    private final String[] roots;
+
+    // options are the ones given to the coordinator, passed on to workers unless they are its own
+    public ShardCoordinator(int workers, String[] options, String[] roots) {
+        this.workers = workers;
+        this.options = options;
+        this.roots = roots;
+        for (String option : options) {
+            if (option.equals("--incremental") || option.equals("--quarantine")) {
+                throw new IllegalArgumentException(option + " cannot be used with --workers");
+            }
+        }
+    }
+
+    public void run(String typeIndex, ParsedUnitStore units, ClasspathTypeSolver.Index classpath, ForkJoinPool pool,
+            Watchdog watchdog, DependencySink out) throws Exception {
+        Path dir = Files.createTempDirectory("static-dependencies-shards");
+        try {
+            List<String> paths = new ArrayList<>();
+            for (String root : roots) {
+                paths.addAll(units.paths(root));
+            }
+            if (typeIndex == null) {
+                typeIndex = dir.resolve("types.idx").toString();
+            }
+            if (TypeIndex.open(typeIndex, roots, paths) == null) {
+                TypeIndex.write(typeIndex, roots, units::paths, units::get);
+                System.err.println("Type index written to " + typeIndex);
+            }
+            Path discovery = dir.resolve("discovery");
+            Main.writeDiscovery(Main.discover(roots, units, classpath, typeIndex, pool, watchdog), discovery.toString());
+            // workers parse what they need themselves, nothing is kept here while they run
+            JavaParserFacade.clearInstances();
+            for (String path : paths) {
+                units.invalidate(path);
+            }
+            units.report(System.err);
+            List<List<String>> shards = shards(paths);
+            List<Process> processes = new ArrayList<>();
+            List<Path> outputs = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                Path shard = dir.resolve("shard-" + i);
+                Files.write(shard, shards.get(i), StandardCharsets.UTF_8);
+                Path output = dir.resolve("output-" + i);
+                outputs.add(output);
+                processes.add(new ProcessBuilder(command(typeIndex, discovery.toString(), shard.toString()))
+                    .redirectOutput(output.toFile())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+            }
+            for (int i = 0; i < processes.size(); i++) {
+                int status = processes.get(i).waitFor();
+                if (status != 0) {
+                    for (Process p : processes) {
+                        p.destroy();
+                    }
+                    throw new RuntimeException("Worker " + i + " exited with status " + status);
+                }
+            }
+            Map<String, long[]> blocks = new HashMap<>();
+            for (int i = 0; i < outputs.size(); i++) {
+                index(outputs.get(i), i, blocks);
+            }
+            List<RandomAccessFile> files = new ArrayList<>();
+            try {
+                for (Path output : outputs) {
+                    files.add(new RandomAccessFile(output.toFile(), "r"));
+                }
+                for (String path : paths) {
+                    long[] block = blocks.get(path);
+                    if (block == null) {
+                        // given up by its worker
+                        continue;
+                    }
+                    byte[] bytes = new byte[(int) (block[2] - block[1])];
+                    RandomAccessFile file = files.get((int) block[0]);
+                    file.seek(block[1]);
+                    file.readFully(bytes);
+                    out.lines(new String(bytes, StandardCharsets.UTF_8));
+                }
+            } finally {
+                for (RandomAccessFile file : files) {
+                    file.close();
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // the lines of a unit as a worker prints them
+    static String block(String path, String lines) {
+        return BLOCK + path + "\n" + lines;
+    }
+
+    // output, start and end offsets of the block of each unit in the output of a worker
+    private static void index(Path output, int n, Map<String, long[]> blocks) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(output))) {
+            long offset = 0;
+            long[] block = null;
+            boolean lineStart = true;
+            ByteArrayOutputStream path = new ByteArrayOutputStream();
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                offset++;
+                if (lineStart && b == BLOCK) {
+                    if (block != null) {
+                        block[2] = offset - 1;
+                    }
+                    path.reset();
+                    for (b = in.read(); b >= 0 && b != '\n'; b = in.read()) {
+                        offset++;
+                        path.write(b);
+                    }
+                    offset++;
+                    block = new long[] { n, offset, offset };
+                    blocks.put(new String(path.toByteArray(), StandardCharsets.UTF_8), block);
+                    continue;
+                }
+                lineStart = b == '\n';
+            }
+            if (block != null) {
+                block[2] = offset;
+            }
+        }
+    }
+
+    // Whole directories (packages) are assigned, largest first, to the shard with the fewest
+    // bytes so far, so that shards are balanced and do not depend on the order of the walk
+    List<List<String>> shards(List<String> paths) {
+        Map<String, List<String>> byDirectory = new TreeMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        for (String path : paths) {
+            String parent = String.valueOf(Paths.get(path).getParent());
+            byDirectory.computeIfAbsent(parent, d -> new ArrayList<>()).add(path);
+            sizes.merge(parent, new File(path).length(), Long::sum);
+        }
+        List<String> directories = new ArrayList<>(byDirectory.keySet());
+        directories.sort(Comparator.comparing((String d) -> sizes.get(d)).reversed().thenComparing(d -> d));
+        int n = Math.min(workers, Math.max(1, directories.size()));
+        List<List<String>> shards = new ArrayList<>();
+        long[] load = new long[n];
+        for (int i = 0; i < n; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (String d : directories) {
+            int lightest = 0;
+            for (int i = 1; i < n; i++) {
+                if (load[i] < load[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).addAll(byDirectory.get(d));
+            load[lightest] += sizes.get(d);
+        }
+        return shards;
+    }
+
+    // the same JVM, class path and options, printing text for a single shard
+    private List<String> command(String typeIndex, String discovery, String shard) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        for (int i = 0; i < options.length; i++) {
+            Integer arguments = COORDINATOR_OPTIONS.get(options[i]);
+            if (arguments != null) {
+                i += arguments;
+                continue;
+            }
+            command.add(options[i]);
+        }
+        command.add("--type-index");
+        command.add(typeIndex);
+        command.add("--discovery");
+        command.add(discovery);
+        command.add("--shard");
+        command.add(shard);
+        command.addAll(Arrays.asList(roots));
+        return command;
+    }
+}
@@ -0,0 +1,59 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.body.*;
+
+import java.io.*;
+import java.util.*;
+
+// Simple names of the types and fields declared in the analysed sources. A name that is neither,
+// nor a local name, can only refer to a library type or to a field inherited from one, and members
+// of those never lead back to the sources.
+class SourceNames {
+
+    private final Set<String> types = new HashSet<>();
+    private final Set<String> fields = new HashSet<>();
+
+    public void add(CompilationUnit cu) {
+        for (TypeDeclaration<?> td : cu.findAll(TypeDeclaration.class)) {
+            types.add(td.getNameAsString());
+        }
+        for (FieldDeclaration fd : cu.findAll(FieldDeclaration.class)) {
+            for (VariableDeclarator vd : fd.getVariables()) {
+                fields.add(vd.getNameAsString());
+            }
+        }
+        for (EnumConstantDeclaration ecd : cu.findAll(EnumConstantDeclaration.class)) {
+            fields.add(ecd.getNameAsString());
+        }
+    }
+
+    public boolean isDeclared(String name) {
+        return types.contains(name) || fields.contains(name);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        write(out, types);
+        write(out, fields);
+    }
+
+    public static SourceNames read(DataInputStream in) throws IOException {
+        SourceNames names = new SourceNames();
+        read(in, names.types);
+        read(in, names.fields);
+        return names;
+    }
+
+    private static void write(DataOutputStream out, Set<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static void read(DataInputStream in, Set<String> names) throws IOException {
+        for (int n = in.readInt(); n > 0; n--) {
+            names.add(in.readUTF());
+        }
+    }
+}
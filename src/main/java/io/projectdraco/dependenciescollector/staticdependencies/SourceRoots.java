@@ -0,0 +1,209 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+import java.util.stream.*;
+
+// Source roots of the arguments, each of which has a type solver of its own, so that types are
+// found by their package. Arguments holding a Maven or Gradle build are replaced by the source
+// directories of its modules, and by the roots the package declarations of any other files imply.
+// Other arguments are kept as they are, unless the roots of their files are to be inferred too.
+class SourceRoots {
+
+    private static final Pattern MODULE = Pattern.compile("<module>\\s*([^<\\s]+)\\s*</module>");
+    private static final Pattern SOURCE_DIRECTORY =
+        Pattern.compile("<(?:test)?[sS]ourceDirectory>\\s*([^<\\s]+)\\s*</(?:test)?[sS]ourceDirectory>");
+    private static final Pattern INCLUDE = Pattern.compile("(?m)^\\s*include\\b(.*)$");
+    private static final Pattern SRC_DIRS = Pattern.compile("\\bsrcDirs?\\b(.*)$", Pattern.MULTILINE);
+    private static final Pattern QUOTED = Pattern.compile("['\"]([^'\"]+)['\"]");
+    private static final String[] BUILD_FILES = { "pom.xml", "build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts" };
+    private static final String[] CONVENTIONAL = { "src/main/java", "src/test/java" };
+
+    public static String[] detect(String[] args, boolean inferAll) throws IOException {
+        List<String> roots = new ArrayList<>();
+        boolean changed = false;
+        for (String arg : args) {
+            Path dir = Paths.get(arg);
+            if (!Files.isDirectory(dir) || !inferAll && !isBuild(dir)) {
+                roots.add(arg);
+                continue;
+            }
+            Set<Path> found = new TreeSet<>();
+            modules(dir, found, new HashSet<>());
+            int left = inferred(dir, found);
+            List<String> detected = found.stream().map(Path::toString).collect(Collectors.toList());
+            if (found.size() == 1 && same(found.iterator().next(), dir)) {
+                roots.add(arg);
+            } else {
+                changed = true;
+                System.err.println(String.format("Source roots of %s: %s%s", arg, String.join(" ", detected),
+                            left == 0 ? "" : String.format(" (%d files left out, within other roots)", left)));
+                roots.addAll(detected);
+            }
+        }
+        return changed ? roots.toArray(new String[roots.size()]) : args;
+    }
+
+    private static boolean same(Path p, Path q) {
+        return p.toAbsolutePath().normalize().equals(q.toAbsolutePath().normalize());
+    }
+
+    private static boolean isBuild(Path dir) {
+        for (String f : BUILD_FILES) {
+            if (Files.isRegularFile(dir.resolve(f))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // source directories a build declares, or the conventional ones, of a module and the modules it includes
+    private static void modules(Path dir, Set<Path> found, Set<Path> seen) throws IOException {
+        if (!seen.add(dir.toAbsolutePath().normalize()) || !isBuild(dir)) {
+            return;
+        }
+        List<String> sources = new ArrayList<>();
+        List<String> modules = new ArrayList<>();
+        Path pom = dir.resolve("pom.xml");
+        if (Files.isRegularFile(pom)) {
+            String text = read(pom);
+            matches(SOURCE_DIRECTORY, text, sources);
+            matches(MODULE, text, modules);
+        }
+        for (String f : BUILD_FILES) {
+            Path gradle = dir.resolve(f);
+            if (!f.contains("gradle") || !Files.isRegularFile(gradle)) {
+                continue;
+            }
+            String text = read(gradle);
+            for (Matcher m = SRC_DIRS.matcher(text); m.find(); ) {
+                matches(QUOTED, m.group(1), sources);
+            }
+            for (Matcher m = INCLUDE.matcher(text); m.find(); ) {
+                List<String> included = new ArrayList<>();
+                matches(QUOTED, m.group(1), included);
+                for (String project : included) {
+                    modules.add(project.replaceAll("^:", "").replace(':', '/'));
+                }
+            }
+        }
+        for (String s : sources) {
+            s = s.replace("${project.basedir}/", "").replace("${basedir}/", "");
+            if (!s.contains("${")) {
+                addDirectory(dir.resolve(s), found);
+            }
+        }
+        for (String c : CONVENTIONAL) {
+            addDirectory(dir.resolve(c), found);
+        }
+        for (String m : modules) {
+            modules(dir.resolve(m).normalize(), found, seen);
+        }
+    }
+
+    private static void addDirectory(Path dir, Set<Path> found) {
+        if (Files.isDirectory(dir)) {
+            found.add(dir.normalize());
+        }
+    }
+
+    // adds the roots implied by the package declarations of the files outside the roots found,
+    // dropping roots that hold others, and gives the number of files left out so
+    private static int inferred(Path dir, Set<Path> found) throws IOException {
+        List<Path> absolute = found.stream().map(p -> p.toAbsolutePath().normalize()).collect(Collectors.toList());
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(p -> p.toString().endsWith(".java")).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Path a = file.toAbsolutePath().normalize();
+            if (absolute.stream().anyMatch(a::startsWith)) {
+                continue;
+            }
+            Path root = file.getParent().normalize();
+            String pkg = packageOf(read(file));
+            if (!pkg.isEmpty()) {
+                Path packageDir = Paths.get(pkg.replace('.', '/'));
+                if (root.endsWith(packageDir)) {
+                    root = root.getNameCount() == packageDir.getNameCount()
+                        ? Paths.get("") : root.subpath(0, root.getNameCount() - packageDir.getNameCount());
+                    if (file.isAbsolute()) {
+                        root = file.getRoot().resolve(root);
+                    }
+                }
+            }
+            if (root.toString().isEmpty()) {
+                root = Paths.get(".");
+            }
+            found.add(root);
+            absolute.add(root.toAbsolutePath().normalize());
+        }
+        List<Path> outer = new ArrayList<>();
+        for (Path p : found) {
+            Path a = p.toAbsolutePath().normalize();
+            if (found.stream().anyMatch(q -> q != p && q.toAbsolutePath().normalize().startsWith(a))) {
+                outer.add(p);
+            }
+        }
+        found.removeAll(outer);
+        List<Path> kept = found.stream().map(p -> p.toAbsolutePath().normalize()).collect(Collectors.toList());
+        return (int) files.stream().map(f -> f.toAbsolutePath().normalize())
+            .filter(f -> kept.stream().noneMatch(f::startsWith)).count();
+    }
+
+    // the package a unit declares, empty for the default one
+    static String packageOf(String source) {
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (source.startsWith("//", i)) {
+                int end = source.indexOf('\n', i);
+                i = end < 0 ? source.length() : end;
+            } else if (source.startsWith("/*", i)) {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? source.length() : end + 2;
+            } else if (c == '@') {
+                // annotations of package-info units
+                i++;
+                while (i < source.length() && (Character.isJavaIdentifierPart(source.charAt(i)) || source.charAt(i) == '.')) {
+                    i++;
+                }
+                while (i < source.length() && Character.isWhitespace(source.charAt(i))) {
+                    i++;
+                }
+                if (i < source.length() && source.charAt(i) == '(') {
+                    for (int depth = 0; i < source.length(); ) {
+                        char d = source.charAt(i++);
+                        if (d == '(') {
+                            depth++;
+                        } else if (d == ')' && --depth == 0) {
+                            break;
+                        }
+                    }
+                }
+            } else if (source.startsWith("package", i) && i + 7 < source.length()
+                    && !Character.isJavaIdentifierPart(source.charAt(i + 7))) {
+                int end = source.indexOf(';', i);
+                return end < 0 ? "" : source.substring(i + 7, end).replaceAll("\\s|/\\*.*?\\*/", "");
+            } else {
+                return "";
+            }
+        }
+        return "";
+    }
+
+    private static void matches(Pattern pattern, String text, List<String> into) {
+        for (Matcher m = pattern.matcher(text); m.find(); ) {
+            into.add(m.group(1));
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,143 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+// Interned edge endpoints: compilation unit paths, types and member signatures. Each run owns its
+// table, whose ids are dense and stable until the run is dropped with it. Looking up text that was
+// already interned allocates nothing and takes no lock, so printer threads only wait on each other
+// while adding new text.
+class Symbols {
+
+    private final StampedLock lock = new StampedLock();
+    // id + 1 of the text in each slot, 0 if the slot is free
+    private int[] slots = new int[1 << 12];
+    private String[] texts = new String[1 << 11];
+    private int[] hashes = new int[1 << 11];
+    private int size;
+
+    public int id(CharSequence s) {
+        int hash = hash(s);
+        long stamp = lock.tryOptimisticRead();
+        int id;
+        try {
+            id = find(s, hash);
+        } catch (RuntimeException e) {
+            // read while the table was being changed, validate fails below
+            id = -1;
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                id = find(s, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (id >= 0) {
+            return id;
+        }
+        stamp = lock.writeLock();
+        try {
+            id = find(s, hash);
+            return id >= 0 ? id : add(s, hash);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public String text(int id) {
+        long stamp = lock.tryOptimisticRead();
+        String text;
+        try {
+            text = texts[id];
+        } catch (RuntimeException e) {
+            text = null;
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                text = texts[id];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return text;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // id of the text, -1 if it was not interned
+    private int find(CharSequence s, int hash) {
+        int[] slots = this.slots;
+        int mask = slots.length - 1;
+        for (int i = hash & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (hashes[id] == hash && contentEquals(texts[id], s)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private int add(CharSequence s, int hash) {
+        if (size == texts.length) {
+            texts = Arrays.copyOf(texts, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        texts[id] = s.toString();
+        hashes[id] = hash;
+        if (size * 2 > slots.length) {
+            rehash();
+        } else {
+            place(slots, id);
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] slots = new int[this.slots.length * 2];
+        for (int id = 0; id < size; id++) {
+            place(slots, id);
+        }
+        this.slots = slots;
+    }
+
+    private void place(int[] slots, int id) {
+        int mask = slots.length - 1;
+        int i = hashes[id] & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = id + 1;
+    }
+
+    // String.hashCode, spread so that the low bits used for the slot depend on every char
+    private static int hash(CharSequence s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean contentEquals(String text, CharSequence s) {
+        if (text.length() != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+
+// Copies records into a large char buffer and writes it out only when full,
+// instead of issuing a synchronized print per token.
+class TextDependencySink implements DependencySink {
+
+    private final Writer out;
+    private final char[] buffer;
+    private int size;
+
+    public TextDependencySink(OutputStream out, int bufferSize) {
+        this.out = new OutputStreamWriter(out);
+        this.buffer = new char[bufferSize];
+    }
+
+    public synchronized void edge(CharSequence source, char separator, CharSequence target) {
+        append(source);
+        append(separator);
+        append(target);
+        append('\n');
+    }
+
+    public synchronized void lines(CharSequence lines) {
+        append(lines);
+    }
+
+    private void append(CharSequence cs) {
+        int length = cs.length();
+        for (int i = 0; i < length; ) {
+            if (size == buffer.length) {
+                drain();
+            }
+            int n = Math.min(length - i, buffer.length - size);
+            if (cs instanceof String) {
+                ((String) cs).getChars(i, i + n, buffer, size);
+            } else if (cs instanceof StringBuilder) {
+                ((StringBuilder) cs).getChars(i, i + n, buffer, size);
+            } else {
+                for (int j = 0; j < n; j++) {
+                    buffer[size + j] = cs.charAt(i + j);
+                }
+            }
+            size += n;
+            i += n;
+        }
+    }
+
+    private void append(char c) {
+        if (size == buffer.length) {
+            drain();
+        }
+        buffer[size++] = c;
+    }
+
+    private void drain() {
+        try {
+            out.write(buffer, 0, size);
+            size = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        drain();
+        out.flush();
+    }
+}
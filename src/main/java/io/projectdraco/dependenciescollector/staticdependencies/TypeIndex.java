@@ -0,0 +1,243 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import com.github.javaparser.ast.*;
+import com.github.javaparser.ast.body.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+// Memory-mapped index of the types declared under each root. Types are keyed the way
+// JavaParserTypeSolver looks them up: by root, the directory holding the file (with dots
+// as separators) and the name of the type inside the file, e.g. "0|a.b|Outer.Inner".
+// Every entry records the declaring file, which is all resolution needs to load the type.
+class TypeIndex {
+
+    private static final int MAGIC = 0x53444349; // "SDCI"
+    private static final int VERSION = 2;
+
+    private final MappedByteBuffer buffer;
+    private final String[] files;
+    private final long[] sizes;
+    private final long[] modified;
+    private final String[] roots;
+    private final int tableStart;
+    private final int capacity;
+
+    private TypeIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a type index");
+        }
+        roots = new String[buffer.getInt()];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = string(buffer);
+        }
+        files = new String[buffer.getInt()];
+        sizes = new long[files.length];
+        modified = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = string(buffer);
+            sizes[i] = buffer.getLong();
+            modified[i] = buffer.getLong();
+        }
+        capacity = buffer.getInt();
+        tableStart = buffer.position();
+    }
+
+    public static class Entry {
+        public final String file;
+        public final String typeName;
+
+        Entry(String file, String typeName) {
+            this.file = file;
+            this.typeName = typeName;
+        }
+    }
+
+    // returns null if there is no usable index for exactly these roots and files
+    public static TypeIndex open(String file, String[] roots, Collection<String> paths) {
+        Path p = Paths.get(file);
+        if (!Files.exists(p)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+            TypeIndex index = new TypeIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            return index.isCurrent(roots, paths) ? index : null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring type index " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private boolean isCurrent(String[] roots, Collection<String> paths) {
+        if (!Arrays.equals(this.roots, roots) || files.length != paths.size()) {
+            return false;
+        }
+        Set<String> current = new HashSet<>(paths);
+        for (int i = 0; i < files.length; i++) {
+            File f = new File(files[i]);
+            if (!current.remove(files[i]) || f.length() != sizes[i] || f.lastModified() != modified[i]) {
+                return false;
+            }
+        }
+        return current.isEmpty();
+    }
+
+    public Entry find(int root, String dir, String typeName) {
+        return find(root + "|" + dir + "|" + typeName);
+    }
+
+    private Entry find(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = buffer.duplicate();
+        int mask = capacity - 1;
+        for (int slot = hash(k) & mask; ; slot = (slot + 1) & mask) {
+            int offset = b.getInt(tableStart + slot * 4);
+            if (offset < 0) {
+                return null;
+            }
+            b.position(offset);
+            if (matches(b, k)) {
+                return entry(b, key.substring(key.lastIndexOf('|') + 1));
+            }
+        }
+    }
+
+    private static boolean matches(ByteBuffer b, byte[] key) {
+        int length = b.getInt();
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (b.get() != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Entry entry(ByteBuffer b, String typeName) {
+        return new Entry(files[b.getInt()], typeName);
+    }
+
+    private static String string(ByteBuffer b) {
+        byte[] bytes = new byte[b.getInt()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0;
+        for (byte x : key) {
+            h = 31 * h + x;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    public static void write(String file, String[] roots, Function<String, List<String>> paths,
+            Function<String, CompilationUnit> units) throws IOException {
+        List<String> files = new ArrayList<>();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (int r = 0; r < roots.length; r++) {
+            Path root = Paths.get(roots[r]).toAbsolutePath();
+            for (String path : paths.apply(roots[r])) {
+                files.add(path);
+                CompilationUnit cu = units.apply(path);
+                if (cu == null) {
+                    continue;
+                }
+                Path parent = root.relativize(Paths.get(path)).getParent();
+                String dir = parent == null ? "" : parent.toString().replace(File.separatorChar, '.');
+                for (TypeDeclaration<?> td : cu.getTypes()) {
+                    addTypes(entries, r + "|" + dir + "|", path, td, "");
+                }
+            }
+        }
+        // order of the hash table does not matter, but writing it sorted keeps index files comparable
+        byte[][] keys = new byte[entries.size()][];
+        int capacity = Integer.highestOneBit(Math.max(16, entries.size() * 2)) * 2;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        List<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+        sorted.sort(Map.Entry.comparingByKey());
+        int[] offsets = new int[sorted.size()];
+        Map<String, Integer> fileIds = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            fileIds.put(files.get(i), i);
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            keys[i] = sorted.get(i).getKey().getBytes(StandardCharsets.UTF_8);
+            offsets[i] = out.size();
+            Entry e = sorted.get(i).getValue();
+            out.writeInt(keys[i].length);
+            out.write(keys[i]);
+            out.writeInt(fileIds.get(e.file));
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(MAGIC);
+        h.writeInt(VERSION);
+        h.writeInt(roots.length);
+        for (String root : roots) {
+            writeString(h, root);
+        }
+        h.writeInt(files.size());
+        for (String f : files) {
+            writeString(h, f);
+            h.writeLong(new File(f).length());
+            h.writeLong(new File(f).lastModified());
+        }
+        h.writeInt(capacity);
+        int bodyStart = header.size() + capacity * 4;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        for (int i = 0; i < keys.length; i++) {
+            int slot = hash(keys[i]) & (capacity - 1);
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            table[slot] = bodyStart + offsets[i];
+        }
+        for (int offset : table) {
+            h.writeInt(offset);
+        }
+        Path tmp = Paths.get(file + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            header.writeTo(os);
+            body.writeTo(os);
+        }
+        Files.move(tmp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void addTypes(Map<String, Entry> entries, String prefix, String path,
+            TypeDeclaration<?> td, String outer) {
+        String typeName = outer + td.getNameAsString();
+        Entry e = new Entry(path, typeName);
+        // JavaParserTypeSolver checks the file named after the outermost type before the rest of the directory
+        String key = prefix + typeName;
+        Entry existing = entries.get(key);
+        if (existing == null || (!isFileMatch(existing) && isFileMatch(e))) {
+            entries.put(key, e);
+        }
+        for (BodyDeclaration<?> member : td.getMembers()) {
+            if (member instanceof TypeDeclaration) {
+                addTypes(entries, prefix, path, (TypeDeclaration<?>) member, typeName + ".");
+            }
+        }
+    }
+
+    private static boolean isFileMatch(Entry e) {
+        return Paths.get(e.file).getFileName().toString().equals(e.typeName.split("\\.")[0] + ".java");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
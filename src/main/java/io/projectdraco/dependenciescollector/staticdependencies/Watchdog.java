@@ -0,0 +1,247 @@
+package io.projectdraco.dependenciescollector.staticdependencies;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Runs each phase of a unit (parse, discovery, print) on a thread of its own, with a bounded
+// stack and wall-clock budget. Units exceeding either are cancelled and quarantined; later runs
+// skip quarantined units until their content changes. A unit that timed out gives up at the next
+// node it visits or type it solves; one that does not, such as a parse, is stopped with
+// Thread.stop where the runtime still supports it. A unit stopped on timeout may leave the state
+// it was using half updated, so its caller is given the chance to start over with fresh state; if
+// it cannot be stopped at all, the run fails rather than go on beside it, unless the caller has
+// no such state to drop.
+class Watchdog {
+
+    // least time a unit that timed out is given to reach its next check, class loading may delay it
+    private static final long CANCEL_GRACE_MILLIS = 1000;
+
+    private final long timeoutMillis;
+    private final long stackSize;
+    private final Path file;
+    // content hash and reason by path
+    private final Map<String, String[]> quarantined = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> checked = new ConcurrentHashMap<>();
+    // content hashes by path, read once for every phase of a unit
+    private final Map<String, String> contentHashes = new ConcurrentHashMap<>();
+    private final AtomicInteger timedOut = new AtomicInteger();
+    private final AtomicInteger overflowed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    // 0 disables the timeout or keeps the default stack size, a null file keeps the quarantine in memory
+    public Watchdog(long timeoutMillis, long stackSize, String file) throws IOException {
+        this.timeoutMillis = timeoutMillis;
+        this.stackSize = stackSize;
+        this.file = file == null ? null : Paths.get(file);
+        if (this.file != null && Files.exists(this.file)) {
+            for (String line : Files.readAllLines(this.file, StandardCharsets.UTF_8)) {
+                String[] cols = line.split("\t", 3);
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (cols.length < 3) {
+                    // such as the last line of a file cut short
+                    System.err.println("Skipping malformed quarantine line in " + file + ": " + line);
+                    continue;
+                }
+                quarantined.put(cols[1], new String[] { cols[0], cols[2] });
+            }
+        }
+    }
+
+    private static class Worker extends Thread {
+        private final Callable<?> task;
+        private Object result;
+        private Throwable failure;
+        private boolean overflowed;
+        private volatile boolean cancelled;
+
+        Worker(Callable<?> task, long stackSize) {
+            super(null, null, "unit-watchdog", stackSize);
+            this.task = task;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                result = task.call();
+            } catch (StackOverflowError e) {
+                overflowed = true;
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+    }
+
+    // thrown where a unit that timed out checks for it, an Error so that catching exceptions does not resume it
+    static class Cancelled extends Error {
+        Cancelled() {
+            super("unit timed out", null, false, false);
+        }
+    }
+
+    // called as units are visited and their types solved, on every thread
+    static void checkCancelled() {
+        Thread t = Thread.currentThread();
+        if (t instanceof Worker && ((Worker) t).cancelled) {
+            throw new Cancelled();
+        }
+    }
+
+    // StackOverflowErrors are swallowed where units are parsed and visited; this records them
+    // for the watchdog when they happen on one of its threads
+    static void overflowed() {
+        if (Thread.currentThread() instanceof Worker) {
+            ((Worker) Thread.currentThread()).overflowed = true;
+        }
+    }
+
+    // false if the unit is quarantined, now or by an earlier run
+    public boolean run(String path, String phase, Runnable task, Runnable reset) {
+        return call(path, phase, () -> {
+            task.run();
+            return Boolean.TRUE;
+        }, reset) != null;
+    }
+
+    // the result of the task, null if the unit is quarantined. If the task is stopped on timeout,
+    // reset, unless null, runs on the calling thread to drop the state the task was using. A null
+    // reset says the task shares no state, so it may be left running if it cannot be stopped.
+    @SuppressWarnings({"unchecked", "deprecation"})
+    public <T> T call(String path, String phase, Callable<T> task, Runnable reset) {
+        if (isQuarantined(path)) {
+            return null;
+        }
+        Worker worker = new Worker(task, stackSize);
+        worker.start();
+        try {
+            worker.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (worker.isAlive()) {
+            timedOut.incrementAndGet();
+            quarantine(path, "timeout in " + phase);
+            worker.cancelled = true;
+            long grace = Math.max(timeoutMillis, CANCEL_GRACE_MILLIS);
+            try {
+                worker.join(grace);
+                if (worker.isAlive()) {
+                    // it checks for cancellation nowhere, the last resort throws UnsupportedOperationException since Java 20
+                    worker.stop();
+                    worker.join(grace);
+                }
+            } catch (UnsupportedOperationException | InterruptedException e) {
+            }
+            if (reset != null) {
+                reset.run();
+            }
+            if (worker.isAlive() && reset == null) {
+                // it shares nothing with other units, such as a parse, so it is left to finish on its own
+                System.err.println("Cannot stop the " + phase + " of " + path + " after it timed out, leaving it behind");
+            } else if (worker.isAlive()) {
+                // it still uses what other units share, such as the interned symbols
+                try {
+                    save();
+                } catch (IOException e) {
+                    System.err.println("Cannot save the quarantine: " + e);
+                }
+                throw new RuntimeException("Cannot stop the " + phase + " of " + path
+                        + " after it timed out; it is quarantined for the next run");
+            }
+            return null;
+        }
+        if (worker.overflowed) {
+            overflowed.incrementAndGet();
+            quarantine(path, "stack overflow in " + phase);
+            return null;
+        }
+        if (worker.failure instanceof RuntimeException) {
+            throw (RuntimeException) worker.failure;
+        }
+        if (worker.failure instanceof Error) {
+            throw (Error) worker.failure;
+        }
+        if (worker.failure != null) {
+            throw new RuntimeException(path, worker.failure);
+        }
+        return (T) worker.result;
+    }
+
+    private boolean isQuarantined(String path) {
+        String[] q = quarantined.get(path);
+        if (q == null) {
+            return false;
+        }
+        if (q[0].equals(contentHash(path))) {
+            if (checked.put(path, Boolean.TRUE) == null) {
+                skipped.incrementAndGet();
+                System.err.println("Skipping quarantined " + path + " (" + q[1] + ")");
+            }
+            return true;
+        }
+        // changed since it was quarantined, give it another chance
+        quarantined.remove(path, q);
+        return false;
+    }
+
+    private void quarantine(String path, String reason) {
+        System.err.println("Quarantining " + path + ": " + reason);
+        quarantined.put(path, new String[] { contentHash(path), reason });
+        checked.put(path, Boolean.TRUE);
+    }
+
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String[]> e : new TreeMap<>(quarantined).entrySet()) {
+                if (Files.exists(Paths.get(e.getKey()))) {
+                    w.write(e.getValue()[0] + "\t" + e.getKey() + "\t" + e.getValue()[1] + "\n");
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void report(PrintStream out) {
+        out.println(String.format("Watchdog: quarantined %d units (%d timed out, %d overflowed the stack), skipped %d",
+                    timedOut.get() + overflowed.get(), timedOut.get(), overflowed.get(), skipped.get()));
+    }
+
+    // the unit changed, its quarantine is to be checked again
+    public void invalidate(String path) {
+        contentHashes.remove(path);
+        checked.remove(path);
+    }
+
+    private String contentHash(String path) {
+        return contentHashes.computeIfAbsent(path, p -> {
+            try {
+                return IncrementalStore.hash(Files.readAllBytes(Paths.get(p)));
+            } catch (IOException e) {
+                return "";
+            }
+        });
+    }
+
+    // sizes such as 512k or 16m
+    static long parseSize(String size) {
+        String s = size.toLowerCase();
+        long unit = 1;
+        if (s.endsWith("k")) {
+            unit = 1 << 10;
+        } else if (s.endsWith("m")) {
+            unit = 1 << 20;
+        } else if (s.endsWith("g")) {
+            unit = 1 << 30;
+        }
+        return unit == 1 ? Long.parseLong(s) : Long.parseLong(s.substring(0, s.length() - 1)) * unit;
+    }
+}